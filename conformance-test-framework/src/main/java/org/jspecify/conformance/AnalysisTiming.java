@@ -0,0 +1,168 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.jspecify.conformance;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.management.ManagementFactory.getMemoryPoolMXBeans;
+import static java.lang.management.MemoryType.HEAP;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * How long the analysis of one group of test files took, and how much heap it used.
+ *
+ * <p>An {@link ConformanceTestRunner.Analyzer} that can tell how much of its time javac itself
+ * spent, as opposed to the checker running inside it, can return its facts as {@link TimedFacts}.
+ * The runner measures the wall time of analyzers that don't, and also their peak heap if it
+ * analyzes one group at a time and timings are requested.
+ */
+public final class AnalysisTiming {
+
+  private final Duration wallTime;
+  private final @Nullable Duration javacTime;
+  private final long peakHeapBytes;
+
+  /**
+   * Creates a timing.
+   *
+   * @param wallTime how long the analysis took
+   * @param javacTime how much of {@code wallTime} javac spent parsing, entering, attributing, and
+   *     generating code, or {@code null} if unknown
+   * @param peakHeapBytes the most heap in use during the analysis, or -1 if unknown
+   */
+  public AnalysisTiming(Duration wallTime, @Nullable Duration javacTime, long peakHeapBytes) {
+    checkArgument(!wallTime.isNegative(), "negative wall time: %s", wallTime);
+    checkArgument(peakHeapBytes >= -1, "peakHeapBytes must be -1 if unknown: %s", peakHeapBytes);
+    this.wallTime = wallTime;
+    this.javacTime = javacTime;
+    this.peakHeapBytes = peakHeapBytes;
+  }
+
+  /** How long the analysis took. */
+  public Duration wallTime() {
+    return wallTime;
+  }
+
+  /** How much of the {@linkplain #wallTime() wall time} javac spent, or {@code null} if unknown. */
+  public @Nullable Duration javacTime() {
+    return javacTime;
+  }
+
+  /**
+   * How much of the {@linkplain #wallTime() wall time} javac didn't spend, which is mostly the
+   * time the checker spent, or {@code null} if unknown.
+   */
+  public @Nullable Duration checkerTime() {
+    return javacTime == null ? null : wallTime.minus(javacTime);
+  }
+
+  /** The most heap in use during the analysis, or -1 if unknown. */
+  public long peakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  /**
+   * Runs an analysis, measuring its wall time and the peak heap use of this JVM while it runs. If
+   * the analysis returns {@link TimedFacts}, what it measured itself takes precedence.
+   *
+   * <p>Peak heap use is for the whole JVM, so it means the most when the JVM analyzes one group at
+   * a time, as each worker of a {@link ForkedAnalyzer} does.
+   */
+  public static TimedFacts measure(Supplier<? extends Iterable<ReportedFact>> analysis) {
+    return measure(analysis, /* measurePeakHeap= */ true);
+  }
+
+  /**
+   * Runs an analysis like {@link #measure(Supplier)}, but measures peak heap use only if {@code
+   * measurePeakHeap} is true. Otherwise, the peak heap is unknown unless the analysis measured it
+   * itself.
+   */
+  public static TimedFacts measure(
+      Supplier<? extends Iterable<ReportedFact>> analysis, boolean measurePeakHeap) {
+    if (measurePeakHeap) {
+      for (MemoryPoolMXBean pool : getMemoryPoolMXBeans()) {
+        if (pool.getType() == HEAP) {
+          pool.resetPeakUsage();
+        }
+      }
+    }
+    long start = System.nanoTime();
+    Iterable<ReportedFact> facts = analysis.get();
+    Duration wallTime = Duration.ofNanos(System.nanoTime() - start);
+    long peakHeapBytes = measurePeakHeap ? measurePeakHeapBytes() : -1;
+    if (facts instanceof TimedFacts) {
+      AnalysisTiming timing = ((TimedFacts) facts).timing();
+      return new TimedFacts(
+          facts,
+          new AnalysisTiming(
+              timing.wallTime,
+              timing.javacTime,
+              timing.peakHeapBytes >= 0 ? timing.peakHeapBytes : peakHeapBytes));
+    }
+    return new TimedFacts(facts, new AnalysisTiming(wallTime, null, peakHeapBytes));
+  }
+
+  private static long measurePeakHeapBytes() {
+    long peakHeapBytes = 0;
+    for (MemoryPoolMXBean pool : getMemoryPoolMXBeans()) {
+      MemoryUsage peak = pool.getPeakUsage();
+      if (pool.getType() == HEAP && peak != null) {
+        /*
+         * The pools may have peaked at different times, so this can overstate the peak. It is still
+         * comparable between runs.
+         */
+        peakHeapBytes += peak.getUsed();
+      }
+    }
+    return peakHeapBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d ms (javac %s ms, checker %s ms), peak heap %s bytes",
+        wallTime.toMillis(),
+        javacTime == null ? "?" : javacTime.toMillis(),
+        javacTime == null ? "?" : requireNonNull(checkerTime()).toMillis(),
+        peakHeapBytes < 0 ? "?" : peakHeapBytes);
+  }
+
+  /** The facts reported by an analysis, along with how long it took. */
+  public static final class TimedFacts implements Iterable<ReportedFact> {
+    private final Iterable<ReportedFact> facts;
+    private final AnalysisTiming timing;
+
+    public TimedFacts(Iterable<ReportedFact> facts, AnalysisTiming timing) {
+      this.facts = facts instanceof TimedFacts ? ((TimedFacts) facts).facts : facts;
+      this.timing = timing;
+    }
+
+    /** How long the analysis took. */
+    public AnalysisTiming timing() {
+      return timing;
+    }
+
+    @Override
+    public Iterator<ReportedFact> iterator() {
+      return facts.iterator();
+    }
+  }
+}
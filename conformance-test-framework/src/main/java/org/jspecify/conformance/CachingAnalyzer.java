@@ -0,0 +1,237 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.jspecify.conformance;
+
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.naturalOrder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * An analyzer that remembers the facts another analyzer reported for each group of files, so that
+ * a later run can skip analyzing groups that haven't changed.
+ *
+ * <p>Each group's facts are stored in a file in the cache directory named for a SHA-256 hash of
+ * everything that can change them: the paths and contents of the files in the group, the contents
+ * of the test deps, and the contents of the files that make up the analyzer itself, along with the
+ * analyzer's options. Because an entry's name determines its contents, entries never go stale, and
+ * several runs may share the directory: Each entry is written to a temporary file and then moved
+ * into place, so readers see either a whole entry or none. An entry that can't be read is treated
+ * as missing.
+ *
+ * <p>Only the analysis is cached. The runner still reads expected facts from every file and builds
+ * the whole report from scratch.
+ */
+public final class CachingAnalyzer implements ConformanceTestRunner.Analyzer {
+
+  /** Converts reported facts to and from the text stored in the cache. */
+  public interface FactCodec {
+    /**
+     * Returns text from which {@link #decode(String)} can recreate {@code fact}, including its
+     * {@linkplain Fact#getFile() file} and {@linkplain Fact#getLineNumber() line number}.
+     */
+    String encode(ReportedFact fact);
+
+    /** Recreates a fact from text returned by {@link #encode(ReportedFact)}. */
+    ReportedFact decode(String text);
+  }
+
+  /** Changes whenever the format of cache entries changes, so that old entries are ignored. */
+  private static final int FORMAT_VERSION = 1;
+
+  private final ConformanceTestRunner.Analyzer analyzer;
+  private final FactCodec codec;
+  private final Path cacheDirectory;
+  private final HashCode analyzerHash;
+  private final Map<Path, HashCode> testDepHashes = new ConcurrentHashMap<>();
+
+  /**
+   * Creates an analyzer that caches the facts reported by {@code analyzer}.
+   *
+   * @param codec converts {@code analyzer}'s reported facts to and from text
+   * @param cacheDirectory the directory in which to store cached facts, created if necessary
+   * @param analyzerFiles the JAR files or class directories that make up {@code analyzer}, such as
+   *     the classpath of the analyzer's tool
+   * @param analyzerOptions options that affect what {@code analyzer} reports
+   */
+  public CachingAnalyzer(
+      ConformanceTestRunner.Analyzer analyzer,
+      FactCodec codec,
+      Path cacheDirectory,
+      ImmutableList<Path> analyzerFiles,
+      ImmutableList<String> analyzerOptions)
+      throws IOException {
+    this.analyzer = analyzer;
+    this.codec = codec;
+    this.cacheDirectory = Files.createDirectories(cacheDirectory);
+    Hasher hasher = Hashing.sha256().newHasher().putInt(FORMAT_VERSION);
+    putStrings(hasher, analyzerOptions);
+    for (Path file : analyzerFiles) {
+      putString(hasher, file.getFileName().toString());
+      hasher.putBytes(hash(file).asBytes());
+    }
+    this.analyzerHash = hasher.hash();
+  }
+
+  @Override
+  public ImmutableList<ReportedFact> analyze(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    Path entry = cacheDirectory.resolve(key(testDirectory, files, testDeps) + ".facts");
+    try {
+      return readEntry(entry);
+    } catch (IOException e) {
+      // Missing or unreadable, so analyze the files again.
+    }
+    ImmutableList<ReportedFact> facts =
+        ImmutableList.copyOf(analyzer.analyze(testDirectory, files, testDeps));
+    writeEntry(entry, facts);
+    return facts;
+  }
+
+  private String key(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    Hasher hasher = Hashing.sha256().newHasher().putBytes(analyzerHash.asBytes());
+    for (Path dep : testDeps) {
+      hasher.putBytes(testDepHashes.computeIfAbsent(dep, CachingAnalyzer::hashUnchecked).asBytes());
+    }
+    for (Path file : files) {
+      // Reported facts name files relative to the test directory.
+      putString(hasher, testDirectory.relativize(file).toString());
+      hasher.putBytes(hashUnchecked(file).asBytes());
+    }
+    return hasher.hash().toString();
+  }
+
+  private ImmutableList<ReportedFact> readEntry(Path entry) throws IOException {
+    long size = Files.size(entry);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+      int count = in.readInt();
+      // Each fact takes at least the four bytes of its length.
+      if (count < 0 || count > size / 4) {
+        throw new IOException("bad fact count in " + entry + ": " + count);
+      }
+      ImmutableList.Builder<ReportedFact> facts = ImmutableList.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        int length = in.readInt();
+        if (length < 0 || length > size) {
+          throw new IOException("bad fact length in " + entry + ": " + length);
+        }
+        byte[] text = new byte[length];
+        in.readFully(text);
+        facts.add(decode(entry, text));
+      }
+      if (in.read() != -1) {
+        throw new IOException("trailing bytes in " + entry);
+      }
+      return facts.build();
+    }
+  }
+
+  private ReportedFact decode(Path entry, byte[] text) throws IOException {
+    try {
+      return codec.decode(new String(text, UTF_8));
+    } catch (RuntimeException e) {
+      // The codec may throw anything for text that it didn't encode.
+      throw new IOException("cannot decode fact in " + entry, e);
+    }
+  }
+
+  private void writeEntry(Path entry, ImmutableList<ReportedFact> facts) {
+    try {
+      Path temporaryFile =
+          Files.createTempFile(cacheDirectory, entry.getFileName().toString(), ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+          out.writeInt(facts.size());
+          for (ReportedFact fact : facts) {
+            byte[] text = codec.encode(fact).getBytes(UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+          }
+        }
+        Files.move(temporaryFile, entry, ATOMIC_MOVE, REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temporaryFile);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Hashes a file's contents, or the relative paths and contents of all files in a directory. A
+   * missing file, like a classpath entry for a directory that was never created, hashes as empty.
+   */
+  private static HashCode hash(Path file) throws IOException {
+    if (Files.notExists(file)) {
+      return HashCode.fromInt(0);
+    }
+    if (!Files.isDirectory(file)) {
+      return MoreFiles.asByteSource(file).hash(Hashing.sha256());
+    }
+    ImmutableSortedSet<Path> directoryFiles;
+    try (Stream<Path> paths = Files.walk(file)) {
+      directoryFiles =
+          paths
+              .filter(Files::isRegularFile)
+              .collect(toImmutableSortedSet(naturalOrder()));
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Path directoryFile : directoryFiles) {
+      putString(hasher, file.relativize(directoryFile).toString());
+      hasher.putBytes(MoreFiles.asByteSource(directoryFile).hash(Hashing.sha256()).asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private static HashCode hashUnchecked(Path file) {
+    try {
+      return hash(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void putStrings(Hasher hasher, ImmutableList<String> strings) {
+    hasher.putInt(strings.size());
+    strings.forEach(string -> putString(hasher, string));
+  }
+
+  /** Puts a string preceded by its length, so that adjacent strings can't run together. */
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, UTF_8);
+  }
+}
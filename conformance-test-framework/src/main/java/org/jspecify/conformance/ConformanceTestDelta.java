@@ -0,0 +1,429 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.jspecify.conformance;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The differences between a stored conformance test report and a new one, in a form that tools can
+ * consume without parsing either report: which expected facts newly pass or fail, which were added
+ * or removed, which files' "no unexpected facts" summaries changed, and the new unexpected facts in
+ * files whose summaries started failing.
+ *
+ * <p>Lines are matched by key, not by position. A named expected fact is matched by its file, name,
+ * and fact text. An unnamed one, whose identifier is just its line number, is matched by its file,
+ * its fact text, and its order among the facts with the same text in that file. A file summary is
+ * matched by its file. So a fact added near the top of a file shows up as one added fact, not as a
+ * change to every fact after it.
+ */
+public final class ConformanceTestDelta {
+
+  private static final String NO_UNEXPECTED_FACTS = ": no unexpected facts";
+
+  /** How many entries of each kind {@link #summary()} lists before eliding the rest. */
+  private static final int SUMMARY_LIMIT = 10;
+
+  private final Counts before;
+  private final Counts after;
+  private final ImmutableList<Line> newlyPassing;
+  private final ImmutableList<Line> newlyFailing;
+  private final ImmutableList<Line> addedFacts;
+  private final ImmutableList<Line> removedFacts;
+  private final ImmutableList<FileSummaryChange> fileSummaryChanges;
+  private final ImmutableList<String> newUnexpectedFacts;
+
+  private ConformanceTestDelta(
+      Counts before,
+      Counts after,
+      ImmutableList<Line> newlyPassing,
+      ImmutableList<Line> newlyFailing,
+      ImmutableList<Line> addedFacts,
+      ImmutableList<Line> removedFacts,
+      ImmutableList<FileSummaryChange> fileSummaryChanges,
+      ImmutableList<String> newUnexpectedFacts) {
+    this.before = before;
+    this.after = after;
+    this.newlyPassing = newlyPassing;
+    this.newlyFailing = newlyFailing;
+    this.addedFacts = addedFacts;
+    this.removedFacts = removedFacts;
+    this.fileSummaryChanges = fileSummaryChanges;
+    this.newUnexpectedFacts = newUnexpectedFacts;
+  }
+
+  /**
+   * Computes the differences between a stored report, as written by {@link
+   * ConformanceTestReport#report(boolean) report(false)}, and a new report. Lines of the stored
+   * report that aren't in that form are ignored.
+   */
+  public static ConformanceTestDelta compute(
+      BufferedReader storedReport, ConformanceTestReport report) throws IOException {
+    Map<String, ArrayDeque<Line>> stored = new LinkedHashMap<>();
+    Keys storedKeys = new Keys();
+    long storedPass = 0;
+    long storedFail = 0;
+    for (String text = storedReport.readLine(); text != null; text = storedReport.readLine()) {
+      Line line = Line.parse(text);
+      if (line != null) {
+        // A key that appears more than once, like the same fact twice on one line, keeps each one.
+        stored.computeIfAbsent(storedKeys.keyOf(line), k -> new ArrayDeque<>()).add(line);
+        if (line.isFailing()) {
+          storedFail++;
+        } else {
+          storedPass++;
+        }
+      }
+    }
+    Comparison comparison = new Comparison(stored, report);
+    // Compare the new report's lines as it produces them, rather than writing it out first.
+    report.forEachStatusLine(text -> comparison.add(requireNonNull(Line.parse(text))));
+    return comparison.build(new Counts(storedPass, storedFail));
+  }
+
+  /**
+   * Compares each status line of a new report with the stored line with the same key, removing
+   * the stored lines as it goes, so that the ones left at the end are the removed ones.
+   */
+  private static final class Comparison {
+    private final Map<String, ArrayDeque<Line>> stored;
+    private final ConformanceTestReport report;
+    private final Keys keys = new Keys();
+    private long pass;
+    private long fail;
+    private final ImmutableList.Builder<Line> newlyPassing = ImmutableList.builder();
+    private final ImmutableList.Builder<Line> newlyFailing = ImmutableList.builder();
+    private final ImmutableList.Builder<Line> addedFacts = ImmutableList.builder();
+    private final ImmutableList.Builder<FileSummaryChange> fileSummaryChanges =
+        ImmutableList.builder();
+    private final ImmutableList.Builder<String> newUnexpectedFacts = ImmutableList.builder();
+
+    Comparison(Map<String, ArrayDeque<Line>> stored, ConformanceTestReport report) {
+      this.stored = stored;
+      this.report = report;
+    }
+
+    void add(Line line) {
+      if (line.isFailing()) {
+        fail++;
+      } else {
+        pass++;
+      }
+      Line storedLine = removeStored(keys.keyOf(line));
+      if (line.isFileSummary) {
+        String storedStatus = storedLine == null ? null : storedLine.status;
+        if (!line.status.equals(storedStatus)) {
+          fileSummaryChanges.add(new FileSummaryChange(line.text, storedStatus, line.status));
+          if (line.isFailing()) {
+            report.unexpectedFactsThatMustBeExpected(Paths.get(line.text)).stream()
+                .map(ConformanceTestReport::factLine)
+                .forEach(newUnexpectedFacts::add);
+          }
+        }
+      } else if (storedLine == null) {
+        addedFacts.add(line);
+      } else if (!line.status.equals(storedLine.status)) {
+        (line.isFailing() ? newlyFailing : newlyPassing).add(line);
+      }
+    }
+
+    private @Nullable Line removeStored(String key) {
+      ArrayDeque<Line> lines = stored.get(key);
+      if (lines == null) {
+        return null;
+      }
+      Line line = lines.remove();
+      if (lines.isEmpty()) {
+        stored.remove(key);
+      }
+      return line;
+    }
+
+    ConformanceTestDelta build(Counts before) {
+      ImmutableList.Builder<Line> removedFacts = ImmutableList.builder();
+      for (ArrayDeque<Line> storedLines : stored.values()) {
+        for (Line storedLine : storedLines) {
+          if (storedLine.isFileSummary) {
+            fileSummaryChanges.add(
+                new FileSummaryChange(storedLine.text, storedLine.status, null));
+          } else {
+            removedFacts.add(storedLine);
+          }
+        }
+      }
+      return new ConformanceTestDelta(
+          before,
+          new Counts(pass, fail),
+          newlyPassing.build(),
+          newlyFailing.build(),
+          addedFacts.build(),
+          removedFacts.build(),
+          fileSummaryChanges.build(),
+          newUnexpectedFacts.build());
+    }
+  }
+
+  /** Returns true if the two reports have the same results. */
+  public boolean isEmpty() {
+    return newlyPassing.isEmpty()
+        && newlyFailing.isEmpty()
+        && addedFacts.isEmpty()
+        && removedFacts.isEmpty()
+        && fileSummaryChanges.isEmpty();
+  }
+
+  /** Returns a short, human-readable summary of the differences. */
+  public String summary() {
+    Formatter summary = new Formatter();
+    summary.format(
+        "Before: %,d pass; %,d fail. After: %,d pass; %,d fail.\n",
+        before.pass, before.fail, after.pass, after.fail);
+    if (isEmpty()) {
+      summary.format("No changes.\n");
+    }
+    summarize(summary, "newly passing fact", newlyPassing, Line::toString);
+    summarize(summary, "newly failing fact", newlyFailing, Line::toString);
+    summarize(summary, "added fact", addedFacts, Line::toString);
+    summarize(summary, "removed fact", removedFacts, Line::toString);
+    summarize(summary, "file summary change", fileSummaryChanges, FileSummaryChange::toString);
+    summarize(summary, "new unexpected fact", newUnexpectedFacts, fact -> "OOPS: " + fact);
+    return summary.toString();
+  }
+
+  private static <T> void summarize(
+      Formatter summary, String description, List<T> entries, Function<T, String> toText) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    summary.format("%,d %s%s:\n", entries.size(), description, entries.size() == 1 ? "" : "s");
+    entries.stream()
+        .limit(SUMMARY_LIMIT)
+        .forEach(entry -> summary.format("  %s\n", toText.apply(entry)));
+    if (entries.size() > SUMMARY_LIMIT) {
+      summary.format("  ... and %,d more\n", entries.size() - SUMMARY_LIMIT);
+    }
+  }
+
+  /**
+   * Writes the differences as a JSON object. Each fact is an object with {@code file}, {@code
+   * identifier}, and {@code fact} fields; added and removed facts also have a {@code status}. Each
+   * changed file summary has a {@code file} and its {@code before} and {@code after} status, either
+   * of which is null if the file isn't in that report.
+   */
+  public void writeJson(Appendable out) throws IOException {
+    out.append("{\n");
+    out.append("  \"before\": ").append(before.toJson()).append(",\n");
+    out.append("  \"after\": ").append(after.toJson()).append(",\n");
+    writeJsonArray(out, "newlyPassing", newlyPassing, line -> factJson(line.text, null));
+    out.append(",\n");
+    writeJsonArray(out, "newlyFailing", newlyFailing, line -> factJson(line.text, null));
+    out.append(",\n");
+    writeJsonArray(out, "addedFacts", addedFacts, line -> factJson(line.text, line.status));
+    out.append(",\n");
+    writeJsonArray(out, "removedFacts", removedFacts, line -> factJson(line.text, line.status));
+    out.append(",\n");
+    writeJsonArray(out, "fileSummaryChanges", fileSummaryChanges, FileSummaryChange::toJson);
+    out.append(",\n");
+    writeJsonArray(out, "newUnexpectedFacts", newUnexpectedFacts, fact -> factJson(fact, null));
+    out.append("\n}\n");
+  }
+
+  private static <T> void writeJsonArray(
+      Appendable out, String name, Collection<T> entries, Function<T, String> toJson)
+      throws IOException {
+    out.append("  ").append(jsonString(name)).append(": [");
+    String separator = "\n    ";
+    for (T entry : entries) {
+      out.append(separator).append(toJson.apply(entry));
+      separator = ",\n    ";
+    }
+    out.append(entries.isEmpty() ? "]" : "\n  ]");
+  }
+
+  /** Returns a JSON object for a fact in the {@code file:identifier:fact text} form. */
+  private static String factJson(String factLine, @Nullable String status) {
+    List<String> parts = Splitter.on(':').limit(3).splitToList(factLine);
+    StringBuilder json = new StringBuilder("{");
+    if (status != null) {
+      json.append("\"status\": ").append(jsonString(status)).append(", ");
+    }
+    json.append("\"file\": ").append(jsonString(parts.get(0)));
+    if (parts.size() == 3) {
+      json.append(", \"identifier\": ").append(jsonString(parts.get(1)));
+      json.append(", \"fact\": ").append(jsonString(parts.get(2)));
+    }
+    return json.append('}').toString();
+  }
+
+  static String jsonString(@Nullable String string) {
+    if (string == null) {
+      return "null";
+    }
+    StringBuilder json = new StringBuilder(string.length() + 2).append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+          json.append('\\').append(c);
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    return json.append('"').toString();
+  }
+
+  /** A status line of a report: an expected fact or a file's "no unexpected facts" summary. */
+  private static final class Line {
+    final String status;
+    final boolean isFileSummary;
+
+    /** The fact, in {@code file:identifier:fact text} form, or the file for a file summary. */
+    final String text;
+
+    private Line(String status, boolean isFileSummary, String text) {
+      this.status = status;
+      this.isFileSummary = isFileSummary;
+      this.text = text;
+    }
+
+    static @Nullable Line parse(String line) {
+      int colon = line.indexOf(": ");
+      if (colon < 0 || line.startsWith("#")) {
+        return null;
+      }
+      String status = line.substring(0, colon);
+      if (!status.equals("PASS") && !status.equals("FAIL")) {
+        return null;
+      }
+      String text = line.substring(colon + 2);
+      return text.endsWith(NO_UNEXPECTED_FACTS)
+          ? new Line(status, true, text.substring(0, text.length() - NO_UNEXPECTED_FACTS.length()))
+          : new Line(status, false, text);
+    }
+
+    boolean isFailing() {
+      return status.equals("FAIL");
+    }
+
+    @Override
+    public String toString() {
+      return status + ": " + text;
+    }
+  }
+
+  /**
+   * Gives each status line of one report a key: what the line is about, which stays the same when
+   * its status changes or when lines are inserted above it in its file.
+   */
+  private static final class Keys {
+    private @Nullable String file;
+
+    /** How many unnamed facts in {@link #file} have been seen so far, by fact text. */
+    private final Map<String, Integer> unnamedFactCounts = new HashMap<>();
+
+    String keyOf(Line line) {
+      if (line.isFileSummary) {
+        return "file " + line.text;
+      }
+      List<String> parts = Splitter.on(':').limit(3).splitToList(line.text);
+      if (parts.size() < 3 || !isLineNumber(parts.get(1))) {
+        return "fact " + line.text;
+      }
+      /*
+       * The identifier of an unnamed fact is its line number, which changes whenever a line is
+       * inserted above it. Each file's lines are contiguous in a report, so counting facts with
+       * the same text only within the current file is enough.
+       */
+      if (!parts.get(0).equals(file)) {
+        file = parts.get(0);
+        unnamedFactCounts.clear();
+      }
+      int occurrence = unnamedFactCounts.merge(parts.get(2), 1, Integer::sum);
+      return String.format("unnamed fact %s:%s #%d", file, parts.get(2), occurrence);
+    }
+
+    private static boolean isLineNumber(String identifier) {
+      return !identifier.isEmpty() && identifier.chars().allMatch(c -> c >= '0' && c <= '9');
+    }
+  }
+
+  private static final class FileSummaryChange {
+    final String file;
+    final @Nullable String before;
+    final @Nullable String after;
+
+    FileSummaryChange(String file, @Nullable String before, @Nullable String after) {
+      this.file = file;
+      this.before = before;
+      this.after = after;
+    }
+
+    String toJson() {
+      return String.format(
+          "{\"file\": %s, \"before\": %s, \"after\": %s}",
+          jsonString(file), jsonString(before), jsonString(after));
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %s -> %s",
+          file, before == null ? "absent" : before, after == null ? "absent" : after);
+    }
+  }
+
+  private static final class Counts {
+    final long pass;
+    final long fail;
+
+    Counts(long pass, long fail) {
+      this.pass = pass;
+      this.fail = fail;
+    }
+
+    String toJson() {
+      return String.format("{\"pass\": %d, \"fail\": %d, \"total\": %d}", pass, fail, pass + fail);
+    }
+  }
+}
@@ -14,11 +14,12 @@
 
 package org.jspecify.conformance;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Maps.immutableEntry;
 import static com.google.common.collect.Multimaps.index;
-import static com.google.common.collect.Sets.union;
+import static com.google.common.collect.Sets.newIdentityHashSet;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.newBufferedReader;
 import static java.util.Comparator.comparingLong;
 import static java.util.function.Predicate.not;
 
@@ -26,13 +27,23 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.ListMultimap;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -41,20 +52,87 @@ import java.util.stream.Stream;
  */
 public final class ConformanceTestReport {
 
+  /*
+   * Everything the report needs is computed once, when the report is built, so that writing it is
+   * linear in the number of facts. Suites can have hundreds of thousands of facts, so looking up
+   * each reported fact in a list of matched facts, or indexing each file's facts by line each time
+   * the report is written, takes too long.
+   */
+
   private final ImmutableSortedSet<Path> files;
-  private final ImmutableListMultimap<Path, ExpectedFact> expectedFactsByFile;
-  private final ImmutableListMultimap<Path, ReportedFact> reportedFactsByFile;
-  private final ImmutableListMultimap<ExpectedFact, ReportedFact> matchingFacts;
+
+  /** For each file, its expected facts and unexpected reported facts by line, in order. */
+  private final ImmutableMap<Path, ImmutableSortedMap<Long, LineFacts>> factsByFileAndLine;
+
+  /** The expected facts that match some reported fact, by identity. */
+  private final Set<ExpectedFact> matchedExpectedFacts;
+
+  /** The files with unexpected reported facts that must be expected. */
+  private final ImmutableSet<Path> filesWithUnexpectedFacts;
+
+  private final long fails;
+  private final int total;
 
   private ConformanceTestReport(
       ImmutableSortedSet<Path> files,
-      ImmutableListMultimap<Path, ExpectedFact> expectedFacts,
-      ImmutableListMultimap<Path, ReportedFact> reportedFacts,
+      ImmutableList<ExpectedFact> expectedFacts,
+      ListMultimap<Path, ReportedFact> reportedFacts,
       ImmutableListMultimap<ExpectedFact, ReportedFact> matchingFacts) {
     this.files = files;
-    this.expectedFactsByFile = expectedFacts;
-    this.reportedFactsByFile = reportedFacts;
-    this.matchingFacts = matchingFacts;
+    this.matchedExpectedFacts = newIdentityHashSet();
+    Set<ReportedFact> matchedReportedFacts = newIdentityHashSet();
+    matchingFacts.forEach(
+        (expectedFact, reportedFact) -> {
+          matchedExpectedFacts.add(expectedFact);
+          matchedReportedFacts.add(reportedFact);
+        });
+
+    Map<Path, SortedMap<Long, LineFacts>> factsByFileAndLine = new HashMap<>();
+    for (ExpectedFact expectedFact : expectedFacts) {
+      lineFacts(factsByFileAndLine, expectedFact).expectedFacts.add(expectedFact);
+    }
+    ImmutableSet.Builder<Path> filesWithUnexpectedFacts = ImmutableSet.builder();
+    for (Map.Entry<Path, ReportedFact> entry : reportedFacts.entries()) {
+      ReportedFact reportedFact = entry.getValue();
+      if (!matchedReportedFacts.contains(reportedFact)) {
+        lineFacts(factsByFileAndLine, reportedFact).unexpectedFacts.add(reportedFact);
+        if (reportedFact.mustBeExpected()) {
+          filesWithUnexpectedFacts.add(entry.getKey());
+        }
+      }
+    }
+    ImmutableMap.Builder<Path, ImmutableSortedMap<Long, LineFacts>> factsByFile =
+        ImmutableMap.builderWithExpectedSize(factsByFileAndLine.size());
+    factsByFileAndLine.forEach(
+        (file, factsByLine) -> {
+          for (LineFacts line : factsByLine.values()) {
+            line.expectedFacts.sort(comparingLong(ExpectedFact::getFactLineNumber));
+          }
+          factsByFile.put(file, ImmutableSortedMap.copyOfSorted(factsByLine));
+        });
+    this.factsByFileAndLine = factsByFile.build();
+    this.filesWithUnexpectedFacts = filesWithUnexpectedFacts.build();
+
+    this.fails =
+        expectedFacts.stream().filter(not(matchedExpectedFacts::contains)).count()
+            + files.stream().filter(this.filesWithUnexpectedFacts::contains).count();
+    this.total = expectedFacts.size() + files.size();
+  }
+
+  private static LineFacts lineFacts(
+      Map<Path, SortedMap<Long, LineFacts>> factsByFileAndLine, Fact fact) {
+    return factsByFileAndLine
+        .computeIfAbsent(fact.getFile(), file -> new TreeMap<>())
+        .computeIfAbsent(fact.getLineNumber(), line -> new LineFacts());
+  }
+
+  /** The expected facts and unexpected reported facts on one line of a file. */
+  private static final class LineFacts {
+    /** The expected facts, in the order in which they're declared. */
+    final List<ExpectedFact> expectedFacts = new ArrayList<>();
+
+    /** The reported facts that don't match any expected fact, in the order they were reported. */
+    final List<ReportedFact> unexpectedFacts = new ArrayList<>();
   }
 
   /**
@@ -66,71 +144,95 @@ public final class ConformanceTestReport {
    *     expected
    */
   public String report(boolean details) {
-    Formatter report = new Formatter();
-    long fails = getFails();
-    int total = getTotal();
+    StringBuilder report = new StringBuilder();
+    try {
+      report(details, report);
+    } catch (IOException e) {
+      throw new AssertionError("StringBuilder doesn't throw IOException", e);
+    }
+    return report.toString();
+  }
+
+  /**
+   * Writes the {@linkplain #report(boolean) textual report} to {@code out} as it goes, so that the
+   * whole report is never in memory at once.
+   *
+   * @param details see {@link #report(boolean)}
+   * @param out where to write the report, such as a {@link java.io.Writer}
+   */
+  public void report(boolean details, Appendable out) throws IOException {
+    Formatter report = new Formatter(out);
     long passes = total - fails;
     report.format(
         "# %,d pass; %,d fail; %,d total; %.1f%% score%n",
         passes, fails, total, 100.0 * passes / total);
-    for (Path file : files) {
-      ImmutableListMultimap<Long, ExpectedFact> expectedFactsInFile =
-          index(expectedFactsByFile.get(file), Fact::getLineNumber);
-      ImmutableListMultimap<Long, ReportedFact> reportedFactsInFile =
-          index(reportedFactsByFile.get(file), Fact::getLineNumber);
-      for (long lineNumber :
-          ImmutableSortedSet.copyOf(
-              union(expectedFactsInFile.keySet(), reportedFactsInFile.keySet()))) {
-        // Report all expected facts on this line and whether they're reported or not.
-        expectedFactsInFile.get(lineNumber).stream()
-            .sorted(comparingLong(ExpectedFact::getFactLineNumber))
-            .forEach(
-                expectedFact ->
-                    writeFact(
-                        report, expectedFact, matchesReportedFact(expectedFact) ? "PASS" : "FAIL"));
-        if (details) {
+    if (details) {
+      for (Path file : files) {
+        for (LineFacts line : factsByLine(file).values()) {
+          // Report all expected facts on this line and whether they're reported or not.
+          for (ExpectedFact expectedFact : line.expectedFacts) {
+            writeFact(report, expectedFact, expectedFactStatus(expectedFact));
+          }
           // Report all unexpected facts on this line and whether they must be expected or not.
-          for (ReportedFact reportedFact : reportedFactsInFile.get(lineNumber)) {
-            if (isUnexpected(reportedFact)) {
-              writeFact(report, reportedFact, reportedFact.mustBeExpected() ? "OOPS" : "INFO");
-            }
+          for (ReportedFact reportedFact : line.unexpectedFacts) {
+            writeFact(report, reportedFact, reportedFact.mustBeExpected() ? "OOPS" : "INFO");
           }
         }
       }
-      if (!details) {
-        // Report whether the file has any unexpected reported facts that must be expected.
-        report.format(
-            "%s: %s: no unexpected facts%n",
-            hasUnexpectedFacts(reportedFactsInFile.values()) ? "FAIL" : "PASS", file);
-      }
+    } else {
+      // Formatter doesn't throw; it records the IOException, which we check below.
+      forEachStatusLine(line -> report.format("%s%n", line));
+    }
+    report.flush();
+    if (report.ioException() != null) {
+      throw report.ioException();
     }
-    return report.toString();
   }
 
-  private long getFails() {
-    return expectedFactsByFile.values().stream().filter(not(this::matchesReportedFact)).count()
-        + files.stream().map(reportedFactsByFile::get).filter(this::hasUnexpectedFacts).count();
+  /**
+   * Passes each line of the {@linkplain #report(boolean) report without details} after the first
+   * to {@code consumer}, without its line separator. That's whether each expected fact was
+   * reported, and then whether the file had any unexpected facts that must be expected, for each
+   * file in turn. This lets callers compare reports line by line without writing out either one.
+   */
+  void forEachStatusLine(Consumer<String> consumer) {
+    for (Path file : files) {
+      for (LineFacts line : factsByLine(file).values()) {
+        for (ExpectedFact expectedFact : line.expectedFacts) {
+          consumer.accept(expectedFactStatus(expectedFact) + ": " + factLine(expectedFact));
+        }
+      }
+      consumer.accept(
+          (filesWithUnexpectedFacts.contains(file) ? "FAIL" : "PASS")
+              + ": "
+              + file
+              + ": no unexpected facts");
+    }
   }
 
-  private int getTotal() {
-    return expectedFactsByFile.size() + files.size();
+  private ImmutableSortedMap<Long, LineFacts> factsByLine(Path file) {
+    return factsByFileAndLine.getOrDefault(file, ImmutableSortedMap.of());
   }
 
-  private boolean hasUnexpectedFacts(Collection<ReportedFact> reportedFacts) {
-    return reportedFacts.stream().anyMatch(rf -> rf.mustBeExpected() && isUnexpected(rf));
+  private String expectedFactStatus(ExpectedFact expectedFact) {
+    return matchedExpectedFacts.contains(expectedFact) ? "PASS" : "FAIL";
   }
 
-  private boolean matchesReportedFact(ExpectedFact expectedFact) {
-    return matchingFacts.containsKey(expectedFact);
+  /** Returns the unexpected facts reported in {@code file} that must be expected, in line order. */
+  ImmutableList<ReportedFact> unexpectedFactsThatMustBeExpected(Path file) {
+    return factsByLine(file).values().stream()
+        .flatMap(line -> line.unexpectedFacts.stream())
+        .filter(ReportedFact::mustBeExpected)
+        .collect(toImmutableList());
   }
 
-  private boolean isUnexpected(ReportedFact reportedFact) {
-    return !matchingFacts.containsValue(reportedFact);
+  /** Returns the text that the report shows for {@code fact}, after its status. */
+  static String factLine(Fact fact) {
+    return String.format("%s:%s:%s", fact.getFile(), fact.getIdentifier(), fact.getFactText());
   }
 
   private static void writeFact(Formatter report, Fact fact, String status) {
-    report.format(
-        "%s: %s:%s:%s%n", status, fact.getFile(), fact.getIdentifier(), fact.getFactText());
+    report.format("%s: %s%n", status, factLine(fact));
   }
 
   /** A builder for {@link ConformanceTestReport}s. */
@@ -155,26 +257,49 @@ public final class ConformanceTestReport {
 
     /** Adds test files and the facts reported for them. */
     void addFiles(Iterable<Path> files, Iterable<ReportedFact> reportedFacts) {
-      for (ReportedFact reportedFact : reportedFacts) {
-        this.reportedFacts.put(reportedFact.getFile(), reportedFact);
-      }
+      addFiles(readExpectedFacts(files), reportedFacts);
+    }
+
+    /**
+     * Reads the expected facts in test files, so that they can be {@linkplain
+     * #addFiles(ImmutableMap, Iterable) added} once the facts reported for the files are available.
+     *
+     * @return the expected facts in each file, keyed by the file's path relative to the test
+     *     directory
+     */
+    ImmutableMap<Path, ImmutableList<ExpectedFact>> readExpectedFacts(Iterable<Path> files) {
+      ImmutableMap.Builder<Path, ImmutableList<ExpectedFact>> expectedFactsByFile =
+          ImmutableMap.builder();
       for (Path file : files) {
         Path relativeFile = testDirectory.relativize(file);
-        this.files.add(relativeFile);
-        addExpectedFacts(relativeFile);
+        try (BufferedReader lines = newBufferedReader(testDirectory.resolve(relativeFile), UTF_8)) {
+          expectedFactsByFile.put(
+              relativeFile, expectedFactReader.readExpectedFacts(relativeFile, lines));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
       }
+      return expectedFactsByFile.build();
     }
 
-    private void addExpectedFacts(Path relativeFile) {
-      try {
-        ImmutableList<ExpectedFact> expectedFactsInFile =
-            expectedFactReader.readExpectedFacts(
-                relativeFile, readAllLines(testDirectory.resolve(relativeFile), UTF_8));
-        expectedFacts.addAll(expectedFactsInFile);
-        matchFacts(relativeFile, expectedFactsInFile).forEach(matchingFacts::put);
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
+    /**
+     * Adds test files and the facts reported for them.
+     *
+     * @param expectedFactsByFile the files' expected facts, as returned by {@link
+     *     #readExpectedFacts(Iterable)}
+     */
+    void addFiles(
+        ImmutableMap<Path, ImmutableList<ExpectedFact>> expectedFactsByFile,
+        Iterable<ReportedFact> reportedFacts) {
+      for (ReportedFact reportedFact : reportedFacts) {
+        this.reportedFacts.put(reportedFact.getFile(), reportedFact);
       }
+      expectedFactsByFile.forEach(
+          (relativeFile, expectedFactsInFile) -> {
+            files.add(relativeFile);
+            expectedFacts.addAll(expectedFactsInFile);
+            matchFacts(relativeFile, expectedFactsInFile).forEach(matchingFacts::put);
+          });
     }
 
     private Stream<ImmutableMap.Entry<ExpectedFact, ReportedFact>> matchFacts(
@@ -193,10 +318,7 @@ public final class ConformanceTestReport {
     ConformanceTestReport build() {
       expectedFactReader.checkErrors();
       return new ConformanceTestReport(
-          files.build(),
-          index(expectedFacts.build(), Fact::getFile),
-          ImmutableListMultimap.copyOf(reportedFacts),
-          matchingFacts.build());
+          files.build(), expectedFacts.build(), reportedFacts, matchingFacts.build());
     }
   }
 }
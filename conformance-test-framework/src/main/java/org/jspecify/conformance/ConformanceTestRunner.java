@@ -14,25 +14,42 @@
 
 package org.jspecify.conformance;
 
+import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
 import static com.google.common.io.MoreFiles.asCharSink;
 import static com.google.common.io.MoreFiles.asCharSource;
-import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.walk;
 import static java.util.Arrays.stream;
 import static java.util.Comparator.naturalOrder;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
 
 /** An object that runs JSpecify conformance tests. */
 public final class ConformanceTestRunner {
@@ -52,10 +69,102 @@ public final class ConformanceTestRunner {
         Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps);
   }
 
-  private final Analyzer analyzer;
+  /**
+   * A delegate object used by {@link ConformanceTestRunner} to analyze test input files without
+   * blocking the runner. Implement this instead of {@link Analyzer} for analyses that already run
+   * asynchronously, such as ones in other processes.
+   */
+  public interface AsyncAnalyzer {
+    /**
+     * Starts analyzing a nonempty set of Java source {@code files} that may refer to each other,
+     * along with a classpath containing symbols the files may depend on. The runner may start
+     * analyzing other groups of files before this analysis completes.
+     *
+     * @param testDirectory the directory containing the test input files to analyze
+     * @param files the source files to analyze
+     * @param testDeps paths to JAR files that must be on the classpath when analyzing
+     * @return a future for the facts reported by the analysis. The runner cancels it if it no
+     *     longer needs the facts, because another analysis failed. If the facts aren't {@link
+     *     AnalysisTiming.TimedFacts}, the runner takes the analysis's wall time to be the time from
+     *     this call until the future completes, which includes any time the analysis spent waiting
+     *     to start.
+     */
+    CompletableFuture<? extends Iterable<ReportedFact>> analyze(
+        Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps);
+
+    /**
+     * Returns an asynchronous analyzer that runs a synchronous {@code analyzer} on {@code
+     * executor}, and {@linkplain AnalysisTiming#measure measures} how long each analysis takes once
+     * it starts running.
+     *
+     * <p>It measures peak heap use only if {@code executor} runs one analysis at a time, since
+     * otherwise the JVM's peak includes whatever else is running, and only if the {@code
+     * JSPECIFY_CONFORMANCE_TEST_TIMINGS} environment variable asks for timings, since resetting
+     * and reading the memory pools isn't free.
+     */
+    static AsyncAnalyzer fromSynchronous(Analyzer analyzer, Executor executor) {
+      boolean measurePeakHeap =
+          isSerial(executor) && TimingsMode.fromEnvironment() != TimingsMode.OFF;
+      return (testDirectory, files, testDeps) ->
+          supplyAsync(
+              () ->
+                  AnalysisTiming.measure(
+                      () -> analyzer.analyze(testDirectory, files, testDeps), measurePeakHeap),
+              executor);
+    }
+  }
+
+  private final AsyncAnalyzer analyzer;
+  /**
+   * Whether the analyzer runs each analysis before returning from {@link AsyncAnalyzer#analyze}, so
+   * that the runner should start each analysis only when it's ready for its facts.
+   */
+  private final boolean serial;
 
+  /** Creates a runner that analyzes one group of files at a time. */
   public ConformanceTestRunner(Analyzer analyzer) {
+    this(analyzer, directExecutor());
+  }
+
+  /**
+   * Creates a runner that analyzes independent groups of files concurrently on {@code executor},
+   * such as a fixed thread pool or an executor that starts a virtual thread for each task. The
+   * {@code analyzer} must then be safe to call from multiple threads at once.
+   *
+   * <p>The report is the same as if the groups were analyzed one at a time: The runner adds each
+   * group's facts to the report in the order in which it found the groups, not in the order in
+   * which their analyses finish.
+   *
+   * <p>If {@code executor} is {@link com.google.common.util.concurrent.MoreExecutors#directExecutor
+   * directExecutor()}, the runner analyzes one group at a time, and it stops at the first analysis
+   * that fails.
+   */
+  public ConformanceTestRunner(Analyzer analyzer, Executor executor) {
+    this(AsyncAnalyzer.fromSynchronous(analyzer, executor), isSerial(executor));
+  }
+
+  /** Whether {@code executor} runs each task before returning from {@code execute}. */
+  private static boolean isSerial(Executor executor) {
+    return executor == directExecutor();
+  }
+
+  /**
+   * Returns a runner that starts analyzing every group of files up front. While the analyses run,
+   * the runner reads the expected facts in each group's files, and then adds the group to the
+   * report once its analysis completes. As with {@link #ConformanceTestRunner(Analyzer, Executor)},
+   * the report doesn't depend on the order in which the analyses complete.
+   */
+  public static ConformanceTestRunner forAsyncAnalyzer(AsyncAnalyzer analyzer) {
+    /*
+     * This is a factory method rather than a constructor because a lambda with three parameters
+     * would be ambiguous between a constructor taking an Analyzer and one taking an AsyncAnalyzer.
+     */
+    return new ConformanceTestRunner(analyzer, /* serial= */ false);
+  }
+
+  private ConformanceTestRunner(AsyncAnalyzer analyzer, boolean serial) {
     this.analyzer = analyzer;
+    this.serial = serial;
   }
 
   /**
@@ -67,20 +176,105 @@ public final class ConformanceTestRunner {
    */
   public ConformanceTestReport runTests(Path testDirectory, ImmutableList<Path> testDeps)
       throws IOException {
-    ConformanceTestReport.Builder report = new ConformanceTestReport.Builder(testDirectory);
+    return runTests(testDirectory, testDeps, ImmutableMap.builder());
+  }
+
+  /**
+   * Analyzes source files and compares reported facts to expected facts declared in each file.
+   *
+   * @param timings gets each group's {@linkplain ConformanceTestTimings#groups() name} and timing
+   */
+  private ConformanceTestReport runTests(
+      Path testDirectory,
+      ImmutableList<Path> testDeps,
+      ImmutableMap.Builder<String, AnalysisTiming> timings)
+      throws IOException {
+    ImmutableList<ImmutableSortedSet<Path>> groups;
     try (Stream<Path> paths = walk(testDirectory)) {
-      paths
-          .filter(path -> path.toFile().isDirectory())
-          .flatMap(
-              directory -> {
-                Stream<ImmutableSortedSet<Path>> groups = javaFileGroups(directory);
-                return directory.equals(testDirectory)
-                    ? groups.flatMap(files -> files.stream().map(ImmutableSortedSet::of))
-                    : groups;
-              })
-          .forEach(
-              files -> report.addFiles(files, analyzer.analyze(testDirectory, files, testDeps)));
-      return report.build();
+      groups =
+          paths
+              .filter(path -> path.toFile().isDirectory())
+              .flatMap(
+                  directory -> {
+                    Stream<ImmutableSortedSet<Path>> groupsInDirectory =
+                        javaFileGroups(directory);
+                    return directory.equals(testDirectory)
+                        ? groupsInDirectory.flatMap(
+                            files -> files.stream().map(ImmutableSortedSet::of))
+                        : groupsInDirectory;
+                  })
+              .collect(toImmutableList());
+    }
+    List<CompletableFuture<? extends Iterable<ReportedFact>>> analyses = new ArrayList<>();
+    // Cancelling one of these doesn't cancel the analysis it depends on, so they're separate.
+    List<CompletableFuture<AnalysisTiming.TimedFacts>> timedAnalyses = new ArrayList<>();
+    // The builder isn't thread-safe, so only this thread adds to it, in the original group order.
+    ConformanceTestReport.Builder report = new ConformanceTestReport.Builder(testDirectory);
+    try {
+      /*
+       * A serial analyzer runs each analysis inside analyze(), so starting them all up front would
+       * run every group before the runner looks at any result, even after one fails. Start each of
+       * its analyses only when the runner is ready for that group's facts instead.
+       */
+      if (!serial) {
+        for (ImmutableSortedSet<Path> files : groups) {
+          startAnalysis(testDirectory, files, testDeps, analyses, timedAnalyses);
+        }
+      }
+      for (int i = 0; i < groups.size(); i++) {
+        // Read this group's expected facts while its analysis and later ones may still run.
+        ImmutableMap<Path, ImmutableList<ExpectedFact>> expectedFacts =
+            report.readExpectedFacts(groups.get(i));
+        if (serial) {
+          startAnalysis(testDirectory, groups.get(i), testDeps, analyses, timedAnalyses);
+        }
+        AnalysisTiming.TimedFacts facts = await(timedAnalyses.get(i));
+        report.addFiles(expectedFacts, facts);
+        timings.put(groupName(testDirectory, groups.get(i)), facts.timing());
+      }
+    } finally {
+      // If an analysis failed, don't start the analyses that haven't started yet.
+      analyses.forEach(analysis -> analysis.cancel(false));
+    }
+    return report.build();
+  }
+
+  private void startAnalysis(
+      Path testDirectory,
+      ImmutableSortedSet<Path> files,
+      ImmutableList<Path> testDeps,
+      List<CompletableFuture<? extends Iterable<ReportedFact>>> analyses,
+      List<CompletableFuture<AnalysisTiming.TimedFacts>> timedAnalyses) {
+    long start = System.nanoTime();
+    CompletableFuture<? extends Iterable<ReportedFact>> analysis =
+        analyzer.analyze(testDirectory, files, testDeps);
+    analyses.add(analysis);
+    timedAnalyses.add(analysis.thenApply(facts -> timedSince(start, facts)));
+  }
+
+  private static AnalysisTiming.TimedFacts timedSince(long start, Iterable<ReportedFact> facts) {
+    return facts instanceof AnalysisTiming.TimedFacts
+        ? (AnalysisTiming.TimedFacts) facts
+        : new AnalysisTiming.TimedFacts(
+            facts, new AnalysisTiming(Duration.ofNanos(System.nanoTime() - start), null, -1));
+  }
+
+  /**
+   * Names a group by its directory relative to the test directory, or by its file if it is a single
+   * file in the test directory itself.
+   */
+  private static String groupName(Path testDirectory, ImmutableSortedSet<Path> files) {
+    Path file = files.first();
+    Path directory = requireNonNull(file.getParent());
+    return testDirectory.relativize(directory.equals(testDirectory) ? file : directory).toString();
+  }
+
+  private static <T> T await(CompletableFuture<T> analysis) {
+    try {
+      return analysis.join();
+    } catch (CompletionException e) {
+      throwIfUnchecked(e.getCause());
+      throw e;
     }
   }
 
@@ -107,40 +301,246 @@ public final class ConformanceTestRunner {
    *
    * <dl>
    *   <dt>{@code compare} or empty
-   *   <dd>Compare the analysis to the stored report, and fail if anything has changed. Note that
-   *       failure isn't always bad! If an assertion used to fail and now passes, this test will
-   *       "fail".
+   *   <dd>Compare the analysis to the stored report, and fail at the first line that has
+   *       changed. Note that failure isn't always bad! If an assertion used to fail and now passes,
+   *       this test will "fail".
    *   <dt>{@code write}
    *   <dd>Write the analysis to the report file. Always passes.
    *   <dt>{@code details}
    *   <dd>Fail if any assertion fails. Report details of unexpected facts.
    * </dl>
    *
+   * <p>When the comparison fails, the failure message summarizes which facts and files changed. If
+   * the {@code JSPECIFY_CONFORMANCE_TEST_DELTA} environment variable is set, the comparison also
+   * writes a {@linkplain ConformanceTestDelta#writeJson JSON description} of the changes, which is
+   * empty if nothing changed, to the file it names.
+   *
+   * <p>The runner also records how long each group's analysis took, in a {@linkplain
+   * ConformanceTestTimings#writeJson timings file} next to {@code testReport}, whose name is {@code
+   * testReport}'s without its extension, plus {@code -timings.json}. Depending on the value of the
+   * {@code JSPECIFY_CONFORMANCE_TEST_TIMINGS} environment variable, it:
+   *
+   * <dl>
+   *   <dt>{@code off} or empty
+   *   <dd>Ignores the timings.
+   *   <dt>{@code write}
+   *   <dd>Writes the timings file, even if the report comparison fails.
+   *   <dt>{@code compare}
+   *   <dd>Fails if any group, or all the groups together, took longer than in the timings file by
+   *       more than the fraction given by the {@code JSPECIFY_CONFORMANCE_TEST_TIMING_TOLERANCE}
+   *       environment variable (0.5 by default) and by at least 100 milliseconds. This happens
+   *       after the report comparison, so a correctness failure takes precedence.
+   * </dl>
+   *
+   * <p>Timings depend on the machine and on its load, so compare only timings recorded on the same
+   * machine, and analyze the files without a {@link CachingAnalyzer}.
+   *
    * @param testDirectory the directory containing the test input files to analyze
    * @param testDeps paths to JAR files that must be on the classpath when analyzing
    * @param testReport the file to read or write
    */
   public void checkConformance(Path testDirectory, ImmutableList<Path> testDeps, Path testReport)
       throws IOException {
-    ConformanceTestReport testResults = runTests(testDirectory, testDeps);
+    ImmutableMap.Builder<String, AnalysisTiming> timings = ImmutableMap.builder();
+    ConformanceTestReport testResults = runTests(testDirectory, testDeps, timings);
+    ConformanceTestTimings testTimings = new ConformanceTestTimings(timings.buildOrThrow());
+    TimingsMode timingsMode = TimingsMode.fromEnvironment();
+    Path timingsFile = timingsFile(testReport);
+    if (timingsMode == TimingsMode.WRITE) {
+      try (Writer json = asCharSink(timingsFile, UTF_8).openBufferedStream()) {
+        testTimings.writeJson(json);
+      }
+    }
     switch (Mode.fromEnvironment()) {
       case DETAILS:
-        System.out.print(testResults.report(true));
+        testResults.report(true, System.out);
         // fall-through
 
       case COMPARE:
-        assertThat(testResults.report(false)).isEqualTo(asCharSource(testReport, UTF_8).read());
+        compare(testResults, testReport);
         break;
 
       case WRITE:
-        asCharSink(testReport, UTF_8).write(testResults.report(false));
+        try (Writer report = asCharSink(testReport, UTF_8).openBufferedStream()) {
+          testResults.report(false, report);
+        }
         break;
 
       default:
         throw new AssertionError(Mode.fromEnvironment());
     }
+    if (timingsMode == TimingsMode.COMPARE) {
+      compareTimings(testTimings, timingsFile);
+    }
+  }
+
+  private static Path timingsFile(Path testReport) {
+    String name = requireNonNull(testReport.getFileName()).toString();
+    int extension = name.lastIndexOf('.');
+    return testReport.resolveSibling(
+        (extension > 0 ? name.substring(0, extension) : name) + "-timings.json");
+  }
+
+  private static void compareTimings(ConformanceTestTimings testTimings, Path timingsFile)
+      throws IOException {
+    if (!Files.exists(timingsFile)) {
+      throw new AssertionError(
+          String.format(
+              "%s doesn't exist. Set %s=write to record timings to compare to.",
+              timingsFile, TimingsMode.ENV_VARIABLE));
+    }
+    ConformanceTestTimings storedTimings;
+    try (BufferedReader json = asCharSource(timingsFile, UTF_8).openBufferedStream()) {
+      storedTimings = ConformanceTestTimings.readJson(json);
+    }
+    double tolerance = timingTolerance();
+    ImmutableList<String> regressions =
+        testTimings.regressionsFrom(storedTimings, tolerance, REGRESSION_THRESHOLD);
+    if (!regressions.isEmpty()) {
+      throw new AssertionError(
+          String.format(
+              "%d timing(s) regressed by more than %.0f%% from %s:%n  %s",
+              regressions.size(),
+              tolerance * 100,
+              timingsFile,
+              String.join(String.format("%n  "), regressions)));
+    }
+  }
+
+  private static double timingTolerance() {
+    String tolerance = nullToEmpty(System.getenv(TOLERANCE_ENV_VARIABLE));
+    if (tolerance.isEmpty()) {
+      return DEFAULT_TOLERANCE;
+    }
+    try {
+      double value = Double.parseDouble(tolerance);
+      if (value >= 0) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through to the error below.
+    }
+    throw new IllegalStateException(
+        String.format(
+            "Environment variable %s must be a nonnegative number if set, but it was \"%s\".",
+            TOLERANCE_ENV_VARIABLE, tolerance));
   }
 
+  private static void compare(ConformanceTestReport testResults, Path testReport)
+      throws IOException {
+    String deltaFile = emptyToNull(System.getenv(DELTA_ENV_VARIABLE));
+    try (ReportComparingWriter comparison =
+        new ReportComparingWriter(
+            testReport, asCharSource(testReport, UTF_8).openBufferedStream())) {
+      testResults.report(false, comparison);
+    } catch (AssertionError e) {
+      ConformanceTestDelta delta = computeDelta(testResults, testReport, deltaFile);
+      throw new AssertionError(String.format("%s%n%n%s", e.getMessage(), delta.summary()), e);
+    }
+    if (deltaFile != null) {
+      computeDelta(testResults, testReport, deltaFile);
+    }
+  }
+
+  /** Computes the delta from the stored report, and writes it to {@code deltaFile} if not null. */
+  private static ConformanceTestDelta computeDelta(
+      ConformanceTestReport testResults, Path testReport, @Nullable String deltaFile)
+      throws IOException {
+    ConformanceTestDelta delta;
+    try (BufferedReader storedReport = asCharSource(testReport, UTF_8).openBufferedStream()) {
+      delta = ConformanceTestDelta.compute(storedReport, testResults);
+    }
+    if (deltaFile != null) {
+      try (Writer json = asCharSink(Paths.get(deltaFile), UTF_8).openBufferedStream()) {
+        delta.writeJson(json);
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * A writer that compares each line written to it with the next line of a stored report, and fails
+   * at the first line that differs. Only one line of each report is in memory at a time.
+   */
+  private static final class ReportComparingWriter extends Writer {
+    private final Path testReport;
+    private final BufferedReader storedReport;
+    private final StringBuilder line = new StringBuilder();
+    private long lineNumber;
+    private boolean failed;
+
+    ReportComparingWriter(Path testReport, BufferedReader storedReport) {
+      this.testReport = testReport;
+      this.storedReport = storedReport;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+      for (int i = offset; i < offset + length; i++) {
+        if (chars[i] == '\n') {
+          compareLine();
+        } else {
+          line.append(chars[i]);
+        }
+      }
+    }
+
+    private void compareLine() throws IOException {
+      lineNumber++;
+      if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+        line.setLength(line.length() - 1);
+      }
+      String actual = line.toString();
+      line.setLength(0);
+      String expected = storedReport.readLine();
+      if (expected == null) {
+        failed = true;
+        throw new AssertionError(
+            String.format(
+                "%s ends after line %d, but the report continues with:%n%s",
+                testReport, lineNumber - 1, actual));
+      }
+      if (!actual.equals(expected)) {
+        failed = true;
+        assertWithMessage("line %s of the report differs from %s", lineNumber, testReport)
+            .that(actual)
+            .isEqualTo(expected);
+      }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() throws IOException {
+      try (BufferedReader storedReport = this.storedReport) {
+        if (failed) {
+          return;
+        }
+        if (line.length() > 0) {
+          compareLine();
+        }
+        String expected = storedReport.readLine();
+        if (expected != null) {
+          throw new AssertionError(
+              String.format(
+                  "the report ends after line %d, but %s continues with:%n%s",
+                  lineNumber, testReport, expected));
+        }
+      }
+    }
+  }
+
+  private static final String DELTA_ENV_VARIABLE = "JSPECIFY_CONFORMANCE_TEST_DELTA";
+
+  private static final String TOLERANCE_ENV_VARIABLE =
+      "JSPECIFY_CONFORMANCE_TEST_TIMING_TOLERANCE";
+
+  private static final double DEFAULT_TOLERANCE = 0.5;
+
+  /** How much longer a timing must be to be a regression, whatever the tolerance. */
+  private static final Duration REGRESSION_THRESHOLD = Duration.ofMillis(100);
+
   private enum Mode {
     COMPARE,
     WRITE,
@@ -150,17 +550,38 @@ public final class ConformanceTestRunner {
     private static final String ENV_VARIABLE = "JSPECIFY_CONFORMANCE_TEST_MODE";
 
     static Mode fromEnvironment() {
-      String mode = nullToEmpty(System.getenv(ENV_VARIABLE));
-      try {
-        return mode.isEmpty() ? COMPARE : valueOf(Ascii.toUpperCase(mode));
-      } catch (IllegalArgumentException e) {
-        throw new IllegalStateException(
-            String.format(
-                "Environment variable %s must be one of %s if set, but it was \"%s\".",
-                ENV_VARIABLE,
-                stream(values()).map(Object::toString).map(Ascii::toLowerCase).collect(toList()),
-                mode));
-      }
+      return enumFromEnvironment(ENV_VARIABLE, Mode.class, COMPARE);
+    }
+  }
+
+  private enum TimingsMode {
+    OFF,
+    WRITE,
+    COMPARE,
+    ;
+
+    private static final String ENV_VARIABLE = "JSPECIFY_CONFORMANCE_TEST_TIMINGS";
+
+    static TimingsMode fromEnvironment() {
+      return enumFromEnvironment(ENV_VARIABLE, TimingsMode.class, OFF);
+    }
+  }
+
+  private static <E extends Enum<E>> E enumFromEnvironment(
+      String variable, Class<E> type, E defaultValue) {
+    String value = nullToEmpty(System.getenv(variable));
+    try {
+      return value.isEmpty() ? defaultValue : Enum.valueOf(type, Ascii.toUpperCase(value));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(
+          String.format(
+              "Environment variable %s must be one of %s if set, but it was \"%s\".",
+              variable,
+              stream(type.getEnumConstants())
+                  .map(Object::toString)
+                  .map(Ascii::toLowerCase)
+                  .collect(toList()),
+              value));
     }
   }
 }
@@ -0,0 +1,217 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.jspecify.conformance;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.jspecify.conformance.ConformanceTestDelta.jsonString;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * How long the analysis of each group of test files took in one conformance test run, as a
+ * performance counterpart to the {@link ConformanceTestReport}.
+ *
+ * <p>The timings are stored as JSON, with one line per group:
+ *
+ * <pre>{@code
+ * {
+ *   "groups": [
+ *     {"group": "path/to/group", "wallMillis": 812, "javacMillis": 140, "checkerMillis": 672,
+ *         "peakHeapBytes": 123456789},
+ *     ...
+ *   ]
+ * }
+ * }</pre>
+ *
+ * <p>Each group's entry is on a single line, not wrapped as it is here. A group is named by its
+ * directory relative to the test directory, or by its file if it is a single file in the test
+ * directory itself. Unknown values are {@code null}.
+ */
+public final class ConformanceTestTimings {
+
+  private static final Pattern GROUP_LINE =
+      Pattern.compile(
+          "\\{\"group\": (\"(?:[^\"\\\\]|\\\\.)*\"), \"wallMillis\": (\\d+),"
+              + " \"javacMillis\": (\\d+|null), \"checkerMillis\": (?:\\d+|null),"
+              + " \"peakHeapBytes\": (\\d+|null)},?");
+
+  private final ImmutableMap<String, AnalysisTiming> groups;
+
+  ConformanceTestTimings(ImmutableMap<String, AnalysisTiming> groups) {
+    this.groups = groups;
+  }
+
+  /** The timing of each group, in the order in which the runner found the groups. */
+  public ImmutableMap<String, AnalysisTiming> groups() {
+    return groups;
+  }
+
+  /** Writes the timings as JSON. */
+  public void writeJson(Appendable out) throws IOException {
+    out.append("{\n  \"groups\": [");
+    String separator = "\n";
+    for (Map.Entry<String, AnalysisTiming> entry : groups.entrySet()) {
+      AnalysisTiming timing = entry.getValue();
+      out.append(separator)
+          .append("    {\"group\": ")
+          .append(jsonString(entry.getKey()))
+          .append(", \"wallMillis\": ")
+          .append(String.valueOf(timing.wallTime().toMillis()))
+          .append(", \"javacMillis\": ")
+          .append(millis(timing.javacTime()))
+          .append(", \"checkerMillis\": ")
+          .append(millis(timing.checkerTime()))
+          .append(", \"peakHeapBytes\": ")
+          .append(timing.peakHeapBytes() < 0 ? "null" : String.valueOf(timing.peakHeapBytes()))
+          .append('}');
+      separator = ",\n";
+    }
+    out.append(groups.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+  }
+
+  private static String millis(@Nullable Duration duration) {
+    return duration == null ? "null" : String.valueOf(duration.toMillis());
+  }
+
+  /**
+   * Reads timings {@linkplain #writeJson written} by an earlier run. This reads only the format
+   * that {@link #writeJson} writes, not arbitrary JSON.
+   */
+  public static ConformanceTestTimings readJson(BufferedReader json) throws IOException {
+    ImmutableMap.Builder<String, AnalysisTiming> groups = ImmutableMap.builder();
+    for (String line = json.readLine(); line != null; line = json.readLine()) {
+      String trimmed = line.trim();
+      if (!trimmed.startsWith("{\"group\"")) {
+        continue;
+      }
+      Matcher matcher = GROUP_LINE.matcher(trimmed);
+      if (!matcher.matches()) {
+        throw new IOException("cannot parse timing: " + line);
+      }
+      groups.put(
+          jsonStringValue(matcher.group(1)),
+          new AnalysisTiming(
+              Duration.ofMillis(Long.parseLong(matcher.group(2))),
+              matcher.group(3).equals("null")
+                  ? null
+                  : Duration.ofMillis(Long.parseLong(matcher.group(3))),
+              matcher.group(4).equals("null") ? -1 : Long.parseLong(matcher.group(4))));
+    }
+    return new ConformanceTestTimings(groups.buildKeepingLast());
+  }
+
+  /** Returns the value of a JSON string literal, which must be well-formed. */
+  private static String jsonStringValue(String literal) {
+    StringBuilder value = new StringBuilder(literal.length());
+    for (int i = 1; i < literal.length() - 1; i++) {
+      char c = literal.charAt(i);
+      if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+      char escaped = literal.charAt(++i);
+      switch (escaped) {
+        case 'n':
+          value.append('\n');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'u':
+          value.append((char) Integer.parseInt(literal.substring(i + 1, i + 5), 16));
+          i += 4;
+          break;
+        default:
+          value.append(escaped);
+      }
+    }
+    return value.toString();
+  }
+
+  /**
+   * Returns a description of each group whose wall time regressed from {@code stored}, and of the
+   * total wall time of the groups in both runs if that regressed. Groups that only one run analyzed
+   * are ignored.
+   *
+   * @param tolerance how much slower than before a group may be, as a fraction of its earlier wall
+   *     time, before it counts as a regression
+   * @param threshold how much slower than before a group must be to count as a regression, so that
+   *     small groups whose timings are mostly noise don't fail
+   */
+  public ImmutableList<String> regressionsFrom(
+      ConformanceTestTimings stored, double tolerance, Duration threshold) {
+    checkArgument(tolerance >= 0, "negative tolerance: %s", tolerance);
+    ImmutableList.Builder<String> regressions = ImmutableList.builder();
+    long storedTotal = 0;
+    long total = 0;
+    for (Map.Entry<String, AnalysisTiming> entry : groups.entrySet()) {
+      AnalysisTiming before = stored.groups.get(entry.getKey());
+      if (before == null) {
+        continue;
+      }
+      AnalysisTiming after = entry.getValue();
+      long beforeMillis = before.wallTime().toMillis();
+      long afterMillis = after.wallTime().toMillis();
+      storedTotal += beforeMillis;
+      total += afterMillis;
+      if (regressed(beforeMillis, afterMillis, tolerance, threshold)) {
+        regressions.add(regression(entry.getKey(), before, after));
+      }
+    }
+    if (regressed(storedTotal, total, tolerance, threshold)) {
+      regressions.add(
+          String.format(
+              "all groups: %d ms -> %d ms (%s)", storedTotal, total, change(storedTotal, total)));
+    }
+    return regressions.build();
+  }
+
+  private static boolean regressed(
+      long beforeMillis, long afterMillis, double tolerance, Duration threshold) {
+    return afterMillis - beforeMillis >= threshold.toMillis()
+        && afterMillis > beforeMillis * (1 + tolerance);
+  }
+
+  private static String regression(String group, AnalysisTiming before, AnalysisTiming after) {
+    long beforeMillis = before.wallTime().toMillis();
+    long afterMillis = after.wallTime().toMillis();
+    return String.format(
+        "%s: %d ms -> %d ms (%s); was %s, now %s",
+        group, beforeMillis, afterMillis, change(beforeMillis, afterMillis), before, after);
+  }
+
+  private static String change(long beforeMillis, long afterMillis) {
+    return beforeMillis == 0
+        ? "+" + afterMillis + " ms"
+        : String.format("%+.0f%%", 100.0 * (afterMillis - beforeMillis) / beforeMillis);
+  }
+}
@@ -22,6 +22,8 @@ import static java.util.stream.Collectors.joining;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -134,6 +136,10 @@ public final class ExpectedFact extends Fact {
 
     private static final CharMatcher ASCII_DIGIT = CharMatcher.inRange('0', '9');
 
+    /** Matches all but the whitespace that {@code \s} matches in {@link #EXPECTATION_COMMENT}. */
+    private static final CharMatcher NOT_REGEX_WHITESPACE =
+        CharMatcher.anyOf(" \t\n\u000B\f\r").negate();
+
     private final Map<Long, String> facts = new HashMap<>();
     private final List<String> errors = new ArrayList<>();
 
@@ -149,6 +155,29 @@ public final class ExpectedFact extends Fact {
       while (i.hasNext()) {
         String line = i.next();
         lineNumber = i.nextIndex();
+        readLine(line, expectedFacts);
+      }
+      return checkUniqueTestNames(expectedFacts.build());
+    }
+
+    /**
+     * Reads expected facts from a file one line at a time, without reading the whole file into
+     * memory.
+     */
+    ImmutableList<ExpectedFact> readExpectedFacts(Path file, BufferedReader lines)
+        throws IOException {
+      this.file = file;
+      ImmutableList.Builder<ExpectedFact> expectedFacts = ImmutableList.builder();
+      lineNumber = 0;
+      for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+        lineNumber++;
+        readLine(line, expectedFacts);
+      }
+      return checkUniqueTestNames(expectedFacts.build());
+    }
+
+    private void readLine(String line, ImmutableList.Builder<ExpectedFact> expectedFacts) {
+      if (mayBeExpectationComment(line)) {
         Matcher matcher = EXPECTATION_COMMENT.matcher(line);
         if (matcher.matches()) {
           setTestName(matcher.group("testName"));
@@ -156,19 +185,30 @@ public final class ExpectedFact extends Fact {
           if (fact != null) {
             facts.put(lineNumber, fact.trim());
           }
-        } else {
-          if (testName != null) {
-            check(!facts.isEmpty(), "no expected facts for test named %s", testName);
-          }
-          facts.forEach(
-              (factLineNumber, factText) ->
-                  expectedFacts.add(
-                      new ExpectedFact(file, lineNumber, testName, factText, factLineNumber)));
-          facts.clear();
-          testName = null;
+          return;
         }
       }
-      return checkUniqueTestNames(expectedFacts.build());
+      if (testName != null) {
+        check(!facts.isEmpty(), "no expected facts for test named %s", testName);
+      }
+      facts.forEach(
+          (factLineNumber, factText) ->
+              expectedFacts.add(
+                  new ExpectedFact(file, lineNumber, testName, factText, factLineNumber)));
+      facts.clear();
+      testName = null;
+    }
+
+    /**
+     * Returns false if {@code line} certainly doesn't match {@link #EXPECTATION_COMMENT}. Every
+     * alternative in that pattern starts with {@code "// test:"} or {@code "// jspecify_"} after
+     * optional whitespace, and almost no lines do, so this lets most lines skip the pattern.
+     */
+    private static boolean mayBeExpectationComment(String line) {
+      int start = NOT_REGEX_WHITESPACE.indexIn(line);
+      return start >= 0
+          && line.startsWith("// ", start)
+          && (line.startsWith("test:", start + 3) || line.startsWith("jspecify_", start + 3));
     }
 
     private void setTestName(@Nullable String testName) {
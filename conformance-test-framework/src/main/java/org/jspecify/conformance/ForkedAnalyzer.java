@@ -0,0 +1,394 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.jspecify.conformance;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.getStackTraceAsString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An analyzer that analyzes each group of files in one of a pool of worker JVMs, so that no state
+ * leaks between the analyses running in this JVM and several groups can be analyzed at once, each
+ * in its own process.
+ *
+ * <p>Each worker runs {@link #main} with the names of an {@link ConformanceTestRunner.Analyzer}
+ * class and a {@link CachingAnalyzer.FactCodec} class, both with no-argument constructors. Workers
+ * start when first needed and then stay running, so that each one's JIT-compiled code and loaded
+ * classes stay warm for later groups. A worker that exits or stops responding is replaced: A group
+ * whose worker crashes is retried once in a new worker, and a group that takes longer than the
+ * timeout fails with an {@link UncheckedTimeoutException}.
+ *
+ * <p>{@link #analyze} blocks until a worker is free and has analyzed the files, so a runner must
+ * call it from as many threads as there are workers to use them all. It is safe to call from
+ * multiple threads at once.
+ *
+ * <p>The parent and the workers talk over the workers' standard input and output. A request is a
+ * byte {@code 1} followed by the test directory, the number of files, the files, the number of test
+ * deps, and the test deps. A response is a byte {@code 0} followed by the number of facts, each
+ * fact as encoded by the codec, and the worker's {@linkplain AnalysisTiming measurements} of the
+ * analysis as 8-byte wall time, javac time (-1 if unknown), and peak heap in nanoseconds and bytes;
+ * or a byte {@code 1} followed by the stack trace of the exception the analysis threw. Other
+ * numbers are 4-byte big-endian integers, and strings are a number of bytes followed by that many
+ * bytes of UTF-8. A worker starts by writing {@link #PROTOCOL_VERSION}, and
+ * exits when its standard input is closed. Workers' standard error, and anything they write to
+ * {@link System#out}, goes to this JVM's standard error.
+ */
+public final class ForkedAnalyzer implements ConformanceTestRunner.Analyzer, Closeable {
+
+  private static final int PROTOCOL_VERSION = 2;
+  private static final byte ANALYZE = 1;
+  private static final byte SUCCESS = 0;
+  private static final byte FAILURE = 1;
+
+  private final ImmutableList<String> command;
+  private final CachingAnalyzer.FactCodec codec;
+  private final Duration timeout;
+
+  /** Slots for the workers, each of which holds a running worker or none. */
+  private final BlockingQueue<Slot> idleSlots;
+
+  private final List<Slot> slots = new ArrayList<>();
+
+  /** Kills workers that take too long. */
+  private final ScheduledExecutorService watchdog =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("forked-analyzer-watchdog")
+              .build());
+
+  /**
+   * Creates a pool of workers.
+   *
+   * @param analyzerClass the analyzer that each worker runs
+   * @param codecClass the codec that converts {@code analyzerClass}'s facts to and from text
+   * @param workers the greatest number of worker JVMs to run at once
+   * @param timeout how long a worker may take to start and analyze one group of files
+   * @param classpath the workers' classpath, which must include {@code analyzerClass}, {@code
+   *     codecClass}, and this class
+   * @param jvmArguments arguments to pass to each worker JVM, such as {@code --add-opens} flags
+   */
+  public ForkedAnalyzer(
+      Class<? extends ConformanceTestRunner.Analyzer> analyzerClass,
+      Class<? extends CachingAnalyzer.FactCodec> codecClass,
+      int workers,
+      Duration timeout,
+      ImmutableList<Path> classpath,
+      ImmutableList<String> jvmArguments) {
+    checkArgument(workers > 0, "workers must be positive: %s", workers);
+    this.command =
+        ImmutableList.<String>builder()
+            .add(Paths.get(System.getProperty("java.home"), "bin", "java").toString())
+            .addAll(jvmArguments)
+            .add("-cp", classpath.stream().map(Path::toString).collect(joining(File.pathSeparator)))
+            .add(ForkedAnalyzer.class.getName(), analyzerClass.getName(), codecClass.getName())
+            .build();
+    this.codec = newInstance(codecClass);
+    this.timeout = timeout;
+    this.idleSlots = new ArrayBlockingQueue<>(workers);
+    for (int i = 0; i < workers; i++) {
+      Slot slot = new Slot();
+      slots.add(slot);
+      idleSlots.add(slot);
+    }
+  }
+
+  /** Returns the facts and the timing that the worker measured. */
+  @Override
+  public AnalysisTiming.TimedFacts analyze(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    Slot slot;
+    try {
+      slot = idleSlots.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for a worker", e);
+    }
+    try {
+      try {
+        return slot.analyze(testDirectory, files, testDeps);
+      } catch (WorkerCrashedException e) {
+        // Retry once in a new worker, in case the old one was in a bad state.
+        return slot.analyze(testDirectory, files, testDeps);
+      }
+    } catch (WorkerCrashedException e) {
+      throw new UncheckedIOException(
+          String.format("worker crashed twice while analyzing %s", files), e.cause);
+    } finally {
+      idleSlots.add(slot);
+    }
+  }
+
+  /** Stops all workers. */
+  @Override
+  public void close() {
+    watchdog.shutdownNow();
+    synchronized (slots) {
+      slots.forEach(Slot::stop);
+    }
+  }
+
+  /** A place in the pool for one worker at a time. Used by only one thread at a time. */
+  private final class Slot {
+    private @Nullable Process process;
+    private @Nullable DataOutputStream requests;
+    private @Nullable DataInputStream responses;
+
+    AnalysisTiming.TimedFacts analyze(
+        Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps)
+        throws WorkerCrashedException {
+      AtomicBoolean timedOut = new AtomicBoolean();
+      ScheduledFuture<?> kill =
+          watchdog.schedule(
+              () -> {
+                timedOut.set(true);
+                stop();
+              },
+              timeout.toMillis(),
+              MILLISECONDS);
+      try {
+        if (!isRunning()) {
+          start();
+        }
+        writeRequest(requests, testDirectory, files, testDeps);
+        return readResponse(responses, files);
+      } catch (IOException e) {
+        stop();
+        if (timedOut.get()) {
+          throw new UncheckedTimeoutException(
+              String.format("analyzing %s took longer than %s", files, timeout), e);
+        }
+        throw new WorkerCrashedException(e);
+      } finally {
+        kill.cancel(false);
+      }
+    }
+
+    private void start() throws IOException {
+      Process process =
+          new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+      synchronized (this) {
+        this.process = process;
+      }
+      requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+      int version = responses.readInt();
+      if (version != PROTOCOL_VERSION) {
+        throw new IOException(
+            String.format("worker speaks protocol %d, not %d", version, PROTOCOL_VERSION));
+      }
+    }
+
+    private synchronized boolean isRunning() {
+      return process != null;
+    }
+
+    /** Kills the worker, if any. Called from the watchdog thread as well as the slot's user. */
+    synchronized void stop() {
+      if (process != null) {
+        process.destroyForcibly();
+        process = null;
+      }
+    }
+
+    private AnalysisTiming.TimedFacts readResponse(
+        DataInputStream responses, ImmutableSortedSet<Path> files) throws IOException {
+      byte status = responses.readByte();
+      switch (status) {
+        case SUCCESS:
+          int count = responses.readInt();
+          ImmutableList.Builder<ReportedFact> facts = ImmutableList.builderWithExpectedSize(count);
+          for (int i = 0; i < count; i++) {
+            facts.add(codec.decode(readString(responses)));
+          }
+          Duration wallTime = Duration.ofNanos(responses.readLong());
+          long javacNanos = responses.readLong();
+          long peakHeapBytes = responses.readLong();
+          return new AnalysisTiming.TimedFacts(
+              facts.build(),
+              new AnalysisTiming(
+                  wallTime, javacNanos < 0 ? null : Duration.ofNanos(javacNanos), peakHeapBytes));
+
+        case FAILURE:
+          throw new IllegalStateException(
+              String.format(
+                  "analyzing %s failed in a worker:%n%s", files, readString(responses)));
+
+        default:
+          throw new IOException("unknown response status " + status);
+      }
+    }
+  }
+
+  /** Thrown when a worker exits or stops responding. */
+  private static final class WorkerCrashedException extends Exception {
+    final IOException cause;
+
+    WorkerCrashedException(IOException cause) {
+      super(cause);
+      this.cause = cause;
+    }
+  }
+
+  private static void writeRequest(
+      DataOutputStream requests,
+      Path testDirectory,
+      ImmutableSortedSet<Path> files,
+      ImmutableList<Path> testDeps)
+      throws IOException {
+    requests.writeByte(ANALYZE);
+    writeString(requests, testDirectory.toString());
+    writePaths(requests, files);
+    writePaths(requests, testDeps);
+    requests.flush();
+  }
+
+  private static void writePaths(DataOutputStream out, Iterable<Path> paths) throws IOException {
+    List<Path> list = ImmutableList.copyOf(paths);
+    out.writeInt(list.size());
+    for (Path path : list) {
+      writeString(out, path.toString());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static <T> T newInstance(Class<T> type) {
+    try {
+      Constructor<T> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return constructor.newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("cannot create a " + type.getName(), e);
+    }
+  }
+
+  /**
+   * Runs a worker.
+   *
+   * @param args the names of the analyzer class and the fact codec class
+   */
+  public static void main(String[] args) throws IOException, ReflectiveOperationException {
+    checkArgument(args.length == 2, "usage: ForkedAnalyzer <analyzer class> <fact codec class>");
+    ConformanceTestRunner.Analyzer analyzer =
+        newInstance(Class.forName(args[0]).asSubclass(ConformanceTestRunner.Analyzer.class));
+    CachingAnalyzer.FactCodec codec =
+        newInstance(Class.forName(args[1]).asSubclass(CachingAnalyzer.FactCodec.class));
+
+    // Only responses may go to standard output.
+    DataOutputStream responses =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    System.setOut(System.err);
+    DataInputStream requests =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+
+    responses.writeInt(PROTOCOL_VERSION);
+    responses.flush();
+    while (true) {
+      byte request;
+      try {
+        request = requests.readByte();
+      } catch (EOFException e) {
+        return;
+      }
+      if (request != ANALYZE) {
+        throw new IOException("unknown request " + request);
+      }
+      Path testDirectory = Paths.get(readString(requests));
+      ImmutableSortedSet<Path> files = ImmutableSortedSet.copyOf(readPaths(requests));
+      ImmutableList<Path> testDeps = readPaths(requests);
+      List<String> facts = new ArrayList<>();
+      AnalysisTiming timing = null;
+      String failure = null;
+      try {
+        // Each worker analyzes one group at a time, so its peak heap use is the group's.
+        AnalysisTiming.TimedFacts timedFacts =
+            AnalysisTiming.measure(() -> analyzer.analyze(testDirectory, files, testDeps));
+        for (ReportedFact fact : timedFacts) {
+          facts.add(codec.encode(fact));
+        }
+        timing = timedFacts.timing();
+      } catch (RuntimeException | Error e) {
+        failure = getStackTraceAsString(e);
+      }
+      if (timing != null) {
+        responses.writeByte(SUCCESS);
+        responses.writeInt(facts.size());
+        for (String fact : facts) {
+          writeString(responses, fact);
+        }
+        Duration javacTime = timing.javacTime();
+        responses.writeLong(timing.wallTime().toNanos());
+        responses.writeLong(javacTime == null ? -1 : javacTime.toNanos());
+        responses.writeLong(timing.peakHeapBytes());
+      } else {
+        responses.writeByte(FAILURE);
+        writeString(responses, failure);
+      }
+      responses.flush();
+    }
+  }
+
+  private static ImmutableList<Path> readPaths(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    ImmutableList.Builder<Path> paths = ImmutableList.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      paths.add(Paths.get(readString(in)));
+    }
+    return paths.build();
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CachingAnalyzerTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /** The files of each group that the analyzer under test was asked to analyze, in order. */
+  private final List<String> analyzedGroups = new ArrayList<>();
+
+  private Path testDirectory;
+  private Path cacheDirectory;
+  private Path testDep;
+  private Path analyzerJar;
+
+  @Before
+  public void writeTestFiles() throws IOException {
+    testDirectory = temporaryFolder.newFolder("tests").toPath();
+    cacheDirectory = temporaryFolder.getRoot().toPath().resolve("build/cache");
+    testDep = temporaryFolder.newFile("dep.jar").toPath();
+    analyzerJar = temporaryFolder.newFile("analyzer.jar").toPath();
+    for (String file : ImmutableList.of("A.java", "B.java", "group/C.java", "group/D.java")) {
+      writeTestFile(file, "reported");
+    }
+  }
+
+  @Test
+  public void unchangedGroupsAreNotAnalyzedAgain() throws IOException {
+    String report = runTests();
+    assertThat(analyzedGroups).containsExactly("A.java", "B.java", "group/C.java,group/D.java");
+
+    analyzedGroups.clear();
+    assertThat(runTests()).isEqualTo(report);
+    assertThat(analyzedGroups).isEmpty();
+  }
+
+  @Test
+  public void changedGroupIsAnalyzedAgain() throws IOException {
+    runTests();
+    writeTestFile("group/D.java", "unreported");
+
+    analyzedGroups.clear();
+    String report = runTests();
+    assertThat(analyzedGroups).containsExactly("group/C.java,group/D.java");
+    assertThat(report).contains("FAIL: group/D.java:2:test:cannot-convert:unreported to expected");
+    assertThat(report).contains("PASS: group/C.java:2:test:cannot-convert:reported to expected");
+  }
+
+  @Test
+  public void changedTestDepInvalidatesEveryGroup() throws IOException {
+    runTests();
+    Files.write(testDep, new byte[] {1});
+
+    analyzedGroups.clear();
+    runTests();
+    assertThat(analyzedGroups).hasSize(3);
+  }
+
+  @Test
+  public void changedAnalyzerInvalidatesEveryGroup() throws IOException {
+    runTests();
+    Files.write(analyzerJar, new byte[] {1});
+
+    analyzedGroups.clear();
+    runTests();
+    assertThat(analyzedGroups).hasSize(3);
+  }
+
+  @Test
+  public void unreadableEntryIsAnalyzedAgain() throws IOException {
+    String report = runTests();
+    try (Stream<Path> entries = Files.list(cacheDirectory)) {
+      for (Path entry : (Iterable<Path>) entries::iterator) {
+        Files.write(entry, new byte[] {0, 0});
+      }
+    }
+
+    analyzedGroups.clear();
+    assertThat(runTests()).isEqualTo(report);
+    assertThat(analyzedGroups).hasSize(3);
+  }
+
+  @Test
+  public void undecodableEntryIsAnalyzedAgain() throws IOException {
+    String report = runTests();
+    try (Stream<Path> entries = Files.list(cacheDirectory)) {
+      for (Path entry : (Iterable<Path>) entries::iterator) {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(entry))) {
+          byte[] garbage = "garbage".getBytes(UTF_8);
+          out.writeInt(1);
+          out.writeInt(garbage.length);
+          out.write(garbage);
+        }
+      }
+    }
+
+    analyzedGroups.clear();
+    assertThat(runTests()).isEqualTo(report);
+    assertThat(analyzedGroups).hasSize(3);
+  }
+
+  private String runTests() throws IOException {
+    CachingAnalyzer analyzer =
+        new CachingAnalyzer(
+            this::analyze,
+            new TestFactCodec(),
+            cacheDirectory,
+            ImmutableList.of(analyzerJar),
+            ImmutableList.of("-Aoption"));
+    return new ConformanceTestRunner(analyzer)
+        .runTests(testDirectory, ImmutableList.of(testDep))
+        .report(true);
+  }
+
+  private void writeTestFile(String file, String reported) throws IOException {
+    Path path = testDirectory.resolve(file);
+    Files.createDirectories(path.getParent());
+    Files.write(
+        path,
+        ImmutableList.of("// test:cannot-convert:" + reported + " to expected", "line under test"),
+        UTF_8);
+  }
+
+  /** Reports that each file's line 2 can't convert "reported" to "expected". */
+  private ImmutableList<ReportedFact> analyze(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    ImmutableList.Builder<String> group = ImmutableList.builder();
+    ImmutableList.Builder<ReportedFact> facts = ImmutableList.builder();
+    for (Path file : files) {
+      Path relativeFile = testDirectory.relativize(file);
+      group.add(relativeFile.toString());
+      facts.add(new TestFact(relativeFile, 2, "test:cannot-convert:reported to expected"));
+    }
+    analyzedGroups.add(String.join(",", group.build()));
+    return facts.build();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConformanceTestDeltaTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ConformanceTestReport report;
+
+  /**
+   * Builds a report in which A.java's first fact passes and its second fails, A.java has an
+   * unexpected fact, and B.java's only fact passes.
+   */
+  @Before
+  public void buildReport() throws IOException {
+    Path testDirectory = temporaryFolder.getRoot().toPath();
+    Files.write(
+        testDirectory.resolve("A.java"),
+        ImmutableList.of(
+            "// test:cannot-convert:a1 to b", "line", "// test:cannot-convert:a2 to b", "line"),
+        UTF_8);
+    Files.write(
+        testDirectory.resolve("B.java"),
+        ImmutableList.of("// test:cannot-convert:b1 to b", "line"),
+        UTF_8);
+    ConformanceTestReport.Builder builder = new ConformanceTestReport.Builder(testDirectory);
+    builder.addFiles(
+        ImmutableList.of(testDirectory.resolve("A.java")),
+        ImmutableList.of(fact("A.java", 2, "a1"), fact("A.java", 3, "oops")));
+    builder.addFiles(
+        ImmutableList.of(testDirectory.resolve("B.java")),
+        ImmutableList.of(fact("B.java", 2, "b1")));
+    report = builder.build();
+  }
+
+  @Test
+  public void compute_noChanges() throws IOException {
+    ConformanceTestDelta delta = compute(report.report(false));
+
+    assertThat(delta.isEmpty()).isTrue();
+    assertThat(delta.summary()).contains("No changes.");
+  }
+
+  @Test
+  public void compute_changes() throws IOException {
+    ConformanceTestDelta delta =
+        compute(
+            "# 2 pass; 2 fail; 4 total; 50.0% score",
+            "FAIL: A.java:2:test:cannot-convert:a1 to b",
+            "PASS: A.java:4:test:cannot-convert:a2 to b",
+            "PASS: A.java: no unexpected facts",
+            "FAIL: C.java:2:test:cannot-convert:c1 to b",
+            "PASS: C.java: no unexpected facts");
+
+    assertThat(delta.isEmpty()).isFalse();
+    assertThat(json(delta))
+        .isEqualTo(
+            lines(
+                "{",
+                "  \"before\": {\"pass\": 3, \"fail\": 2, \"total\": 5},",
+                "  \"after\": {\"pass\": 3, \"fail\": 2, \"total\": 5},",
+                "  \"newlyPassing\": [",
+                "    {\"file\": \"A.java\", \"identifier\": \"2\", "
+                  + "\"fact\": \"test:cannot-convert:a1 to b\"}",
+                "  ],",
+                "  \"newlyFailing\": [",
+                "    {\"file\": \"A.java\", \"identifier\": \"4\", "
+                  + "\"fact\": \"test:cannot-convert:a2 to b\"}",
+                "  ],",
+                "  \"addedFacts\": [",
+                "    {\"status\": \"PASS\", \"file\": \"B.java\", \"identifier\": \"2\", "
+                  + "\"fact\": \"test:cannot-convert:b1 to b\"}",
+                "  ],",
+                "  \"removedFacts\": [",
+                "    {\"status\": \"FAIL\", \"file\": \"C.java\", \"identifier\": \"2\", "
+                  + "\"fact\": \"test:cannot-convert:c1 to b\"}",
+                "  ],",
+                "  \"fileSummaryChanges\": [",
+                "    {\"file\": \"A.java\", \"before\": \"PASS\", \"after\": \"FAIL\"},",
+                "    {\"file\": \"B.java\", \"before\": null, \"after\": \"PASS\"},",
+                "    {\"file\": \"C.java\", \"before\": \"PASS\", \"after\": null}",
+                "  ],",
+                "  \"newUnexpectedFacts\": [",
+                "    {\"file\": \"A.java\", \"identifier\": \"3\", "
+                  + "\"fact\": \"test:cannot-convert:oops to b\"}",
+                "  ]",
+                "}"));
+    assertThat(delta.summary())
+        .isEqualTo(
+            lines(
+                "Before: 3 pass; 2 fail. After: 3 pass; 2 fail.",
+                "1 newly passing fact:",
+                "  PASS: A.java:2:test:cannot-convert:a1 to b",
+                "1 newly failing fact:",
+                "  FAIL: A.java:4:test:cannot-convert:a2 to b",
+                "1 added fact:",
+                "  PASS: B.java:2:test:cannot-convert:b1 to b",
+                "1 removed fact:",
+                "  FAIL: C.java:2:test:cannot-convert:c1 to b",
+                "3 file summary changes:",
+                "  A.java: PASS -> FAIL",
+                "  B.java: absent -> PASS",
+                "  C.java: PASS -> absent",
+                "1 new unexpected fact:",
+                "  OOPS: A.java:3:test:cannot-convert:oops to b"));
+  }
+
+  @Test
+  public void compute_shiftedLines() throws IOException {
+    ConformanceTestDelta delta =
+        compute(
+            "# 3 pass; 2 fail; 5 total; 60.0% score",
+            "PASS: A.java:12:test:cannot-convert:a1 to b",
+            "FAIL: A.java:14:test:cannot-convert:a2 to b",
+            "FAIL: A.java: no unexpected facts",
+            "PASS: B.java:1:test:cannot-convert:b1 to b",
+            "PASS: B.java: no unexpected facts");
+
+    assertThat(delta.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void summary_elidesLongLists() throws IOException {
+    ImmutableList.Builder<String> storedReport = ImmutableList.builder();
+    storedReport.add(report.report(false).split("\\R"));
+    for (int i = 0; i < 12; i++) {
+      storedReport.add("PASS: Removed.java:" + i + ":test:cannot-convert:x to b");
+    }
+
+    String summary = compute(storedReport.build().toArray(new String[0])).summary();
+
+    assertThat(summary).contains("12 removed facts:");
+    assertThat(summary).contains("  PASS: Removed.java:9:test:cannot-convert:x to b");
+    assertThat(summary).doesNotContain("Removed.java:10:");
+    assertThat(summary).contains("  ... and 2 more");
+  }
+
+  private ConformanceTestDelta compute(String... storedReport) throws IOException {
+    return ConformanceTestDelta.compute(
+        new BufferedReader(new StringReader(Joiner.on('\n').join(storedReport))), report);
+  }
+
+  private static String json(ConformanceTestDelta delta) throws IOException {
+    StringBuilder json = new StringBuilder();
+    delta.writeJson(json);
+    return json.toString();
+  }
+
+  private static String lines(String... lines) {
+    return Joiner.on('\n').join(lines) + '\n';
+  }
+
+  private static ReportedFact fact(String file, long lineNumber, String source) {
+    return new TestFact(Paths.get(file), lineNumber, ReportedFact.cannotConvert(source, "b"));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConformanceTestReportTest {
+
+  /**
+   * The number of files and expected facts per file in {@link #report_largeFactSet}: 1,000 files
+   * with 100 expected facts and 100 reported facts each is 200,000 facts in all.
+   */
+  private static final int LARGE_FILES = 1_000;
+
+  private static final int LARGE_FACTS_PER_FILE = 100;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path testDirectory;
+
+  @Before
+  public void setUp() {
+    testDirectory = temporaryFolder.getRoot().toPath();
+  }
+
+  @Test
+  public void report() throws IOException {
+    Path a = writeTestFile("A.java", "a1", "a2", "a3");
+    Path b = writeTestFile("B.java", "b1");
+    ConformanceTestReport.Builder builder = new ConformanceTestReport.Builder(testDirectory);
+    builder.addFiles(
+        ImmutableList.of(a),
+        ImmutableList.of(
+            fact("A.java", 2, "other", false),
+            fact("A.java", 2, "a1", true),
+            fact("A.java", 6, "a3", true),
+            fact("A.java", 6, "unexpected", true),
+            fact("A.java", 7, "unexpected", true)));
+    builder.addFiles(ImmutableList.of(b), ImmutableList.of(fact("B.java", 1, "b", false)));
+    ConformanceTestReport report = builder.build();
+
+    assertThat(report.report(false))
+        .isEqualTo(
+            lines(
+                "# 3 pass; 3 fail; 6 total; 50.0% score",
+                "PASS: A.java:2:test:cannot-convert:a1 to b",
+                "FAIL: A.java:4:test:cannot-convert:a2 to b",
+                "PASS: A.java:6:test:cannot-convert:a3 to b",
+                "FAIL: A.java: no unexpected facts",
+                "FAIL: B.java:2:test:cannot-convert:b1 to b",
+                "PASS: B.java: no unexpected facts"));
+    assertThat(report.report(true))
+        .isEqualTo(
+            lines(
+                "# 3 pass; 3 fail; 6 total; 50.0% score",
+                "PASS: A.java:2:test:cannot-convert:a1 to b",
+                "INFO: A.java:2:test:cannot-convert:other to b",
+                "FAIL: A.java:4:test:cannot-convert:a2 to b",
+                "PASS: A.java:6:test:cannot-convert:a3 to b",
+                "OOPS: A.java:6:test:cannot-convert:unexpected to b",
+                "OOPS: A.java:7:test:cannot-convert:unexpected to b",
+                "INFO: B.java:1:test:cannot-convert:b to b",
+                "FAIL: B.java:2:test:cannot-convert:b1 to b"));
+  }
+
+  @Test
+  public void report_toAppendable() throws IOException {
+    Path a = writeTestFile("A.java", "a1", "a2");
+    ConformanceTestReport.Builder builder = new ConformanceTestReport.Builder(testDirectory);
+    builder.addFiles(
+        ImmutableList.of(a),
+        ImmutableList.of(
+            fact("A.java", 2, "a1", true), fact("A.java", 4, "other", true)));
+    ConformanceTestReport report = builder.build();
+
+    for (boolean details : new boolean[] {false, true}) {
+      StringWriter out = new StringWriter();
+      report.report(details, out);
+      assertThat(out.toString()).isEqualTo(report.report(details));
+    }
+  }
+
+  /**
+   * A regression test for building and writing a report with many facts. It takes a few seconds.
+   * When the report looked up each reported fact in a list of all matched facts, it took over 40,
+   * so the timeout leaves room for a slow machine but still catches quadratic code.
+   */
+  @Test(timeout = 20_000)
+  public void report_largeFactSet() throws IOException {
+    ConformanceTestReport.Builder builder = new ConformanceTestReport.Builder(testDirectory);
+    for (int f = 0; f < LARGE_FILES; f++) {
+      String file = String.format("p%d/F%d.java", f % 10, f);
+      List<String> expected = new ArrayList<>();
+      ImmutableList.Builder<ReportedFact> reported = ImmutableList.builder();
+      for (int i = 0; i < LARGE_FACTS_PER_FILE; i++) {
+        expected.add("e" + i);
+        // Report every other expected fact, and an unexpected fact for each one not reported.
+        reported.add(fact(file, 2 * i + 2, i % 2 == 0 ? "e" + i : "u" + i, true));
+      }
+      builder.addFiles(
+          ImmutableList.of(writeTestFile(file, expected.toArray(new String[0]))), reported.build());
+    }
+
+    ConformanceTestReport report = builder.build();
+    String summary = report.report(false);
+    String details = report.report(true);
+
+    int total = LARGE_FILES * (LARGE_FACTS_PER_FILE + 1);
+    int passes = LARGE_FILES * LARGE_FACTS_PER_FILE / 2;
+    assertThat(summary)
+        .startsWith(
+            String.format(
+                "# %,d pass; %,d fail; %,d total; 49.5%% score%n",
+                passes, total - passes, total));
+    assertThat(summary).contains("FAIL: p0/F0.java:4:test:cannot-convert:e1 to b");
+    assertThat(details).contains("OOPS: p0/F0.java:4:test:cannot-convert:u1 to b");
+  }
+
+  /** Writes a file with an expected fact for each of {@code sources} on every other line. */
+  private Path writeTestFile(String file, String... sources) throws IOException {
+    Path path = testDirectory.resolve(file);
+    Files.createDirectories(path.getParent());
+    List<String> lines = new ArrayList<>();
+    for (String source : sources) {
+      lines.add("// test:cannot-convert:" + source + " to b");
+      lines.add("line under test");
+    }
+    return Files.write(path, lines, UTF_8);
+  }
+
+  private static String lines(String... lines) {
+    return Joiner.on(System.lineSeparator()).join(lines) + System.lineSeparator();
+  }
+
+  private static ReportedFact fact(
+      String file, long lineNumber, String source, boolean mustBeExpected) {
+    return new TestFact(
+        Paths.get(file), lineNumber, ReportedFact.cannotConvert(source, "b"), mustBeExpected);
+  }
+}
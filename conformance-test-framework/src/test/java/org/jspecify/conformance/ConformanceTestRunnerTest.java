@@ -0,0 +1,253 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConformanceTestRunnerTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService executor = newFixedThreadPool(4);
+  private Path testDirectory;
+
+  @Before
+  public void writeTestFiles() throws IOException {
+    testDirectory = temporaryFolder.getRoot().toPath();
+    for (String file : ImmutableList.of("A.java", "B.java", "group/C.java", "group/D.java")) {
+      Path path = testDirectory.resolve(file);
+      Files.createDirectories(path.getParent());
+      Files.write(
+          path,
+          ImmutableList.of(
+              "// test:cannot-convert:reported to expected ",
+              "line under test",
+              "// test:cannot-convert:unreported to expected ",
+              "another line under test"),
+          UTF_8);
+    }
+  }
+
+  @After
+  public void shutDownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void runTests_concurrentReportMatchesSerialReport() throws IOException {
+    ConformanceTestReport serial =
+        new ConformanceTestRunner(ConformanceTestRunnerTest::analyze)
+            .runTests(testDirectory, ImmutableList.of());
+    ConformanceTestReport concurrent =
+        new ConformanceTestRunner(ConformanceTestRunnerTest::analyze, executor)
+            .runTests(testDirectory, ImmutableList.of());
+
+    assertThat(concurrent.report(false)).isEqualTo(serial.report(false));
+    assertThat(concurrent.report(true)).isEqualTo(serial.report(true));
+    assertThat(serial.report(false)).startsWith("# 6 pass; 6 fail; 12 total; 50.0% score");
+  }
+
+  @Test(timeout = 10_000)
+  public void runTests_asyncAnalyzer() throws IOException {
+    List<CompletableFuture<ImmutableList<ReportedFact>>> analyses = new ArrayList<>();
+    List<Runnable> completions = new ArrayList<>();
+    ConformanceTestRunner.AsyncAnalyzer asyncAnalyzer =
+        (directory, files, deps) -> {
+          CompletableFuture<ImmutableList<ReportedFact>> analysis = new CompletableFuture<>();
+          analyses.add(analysis);
+          completions.add(() -> analysis.complete(analyze(directory, files, deps)));
+          if (analyses.size() == 3) {
+            // The runner has started every analysis without waiting for any. Complete them from
+            // another thread, last first.
+            new Thread(() -> Lists.reverse(completions).forEach(Runnable::run)).start();
+          }
+          return analysis;
+        };
+
+    ConformanceTestReport report =
+        ConformanceTestRunner.forAsyncAnalyzer(asyncAnalyzer)
+            .runTests(testDirectory, ImmutableList.of());
+
+    assertThat(report.report(true))
+        .isEqualTo(
+            new ConformanceTestRunner(ConformanceTestRunnerTest::analyze)
+                .runTests(testDirectory, ImmutableList.of())
+                .report(true));
+  }
+
+  @Test
+  public void runTests_asyncAnalysisFailureCancelsOtherAnalyses() {
+    IllegalStateException failure = new IllegalStateException("analysis failed");
+    List<CompletableFuture<ImmutableList<ReportedFact>>> analyses = new ArrayList<>();
+    ConformanceTestRunner runner =
+        ConformanceTestRunner.forAsyncAnalyzer(
+            (directory, files, deps) -> {
+              CompletableFuture<ImmutableList<ReportedFact>> analysis = new CompletableFuture<>();
+              if (analyses.isEmpty()) {
+                analysis.completeExceptionally(failure);
+              }
+              analyses.add(analysis);
+              return analysis;
+            });
+
+    assertThat(
+            assertThrows(
+                IllegalStateException.class,
+                () -> runner.runTests(testDirectory, ImmutableList.of())))
+        .isSameInstanceAs(failure);
+    assertThat(analyses).hasSize(3);
+    assertThat(analyses.get(1).isCancelled()).isTrue();
+    assertThat(analyses.get(2).isCancelled()).isTrue();
+  }
+
+  @Test
+  public void runTests_analysisFailurePropagates() {
+    IllegalStateException failure = new IllegalStateException("analysis failed");
+    ConformanceTestRunner runner =
+        new ConformanceTestRunner(
+            (directory, files, deps) -> {
+              throw failure;
+            },
+            executor);
+
+    assertThat(
+            assertThrows(
+                IllegalStateException.class,
+                () -> runner.runTests(testDirectory, ImmutableList.of())))
+        .isSameInstanceAs(failure);
+  }
+
+  @Test
+  public void runTests_serialAnalysisFailureStopsLaterAnalyses() {
+    IllegalStateException failure = new IllegalStateException("analysis failed");
+    List<ImmutableSortedSet<Path>> analyzed = new ArrayList<>();
+    ConformanceTestRunner runner =
+        new ConformanceTestRunner(
+            (directory, files, deps) -> {
+              analyzed.add(files);
+              throw failure;
+            });
+
+    assertThat(
+            assertThrows(
+                IllegalStateException.class,
+                () -> runner.runTests(testDirectory, ImmutableList.of())))
+        .isSameInstanceAs(failure);
+    assertThat(analyzed).hasSize(1);
+  }
+
+  @Test
+  public void checkConformance_matchingReport() throws IOException {
+    ConformanceTestRunner runner = new ConformanceTestRunner(ConformanceTestRunnerTest::analyze);
+    Path testReport = temporaryFolder.newFile("report.txt").toPath();
+    Files.write(
+        testReport,
+        runner.runTests(testDirectory, ImmutableList.of()).report(false).getBytes(UTF_8));
+
+    runner.checkConformance(testDirectory, ImmutableList.of(), testReport);
+  }
+
+  @Test
+  public void checkConformance_reportsFirstDifferentLine() throws IOException {
+    ConformanceTestRunner runner = new ConformanceTestRunner(ConformanceTestRunnerTest::analyze);
+    Path testReport = temporaryFolder.newFile("report.txt").toPath();
+    List<String> lines =
+        new ArrayList<>(
+            Splitter.onPattern("\\R")
+                .omitEmptyStrings()
+                .splitToList(runner.runTests(testDirectory, ImmutableList.of()).report(false)));
+    lines.set(2, "FAIL: A.java:changed");
+    lines.set(4, "FAIL: B.java:changed");
+    Files.write(testReport, lines, UTF_8);
+
+    AssertionError failure =
+        assertThrows(
+            AssertionError.class,
+            () -> runner.checkConformance(testDirectory, ImmutableList.of(), testReport));
+    // The comparison stops at the first difference.
+    assertThat(failure).hasCauseThat().hasMessageThat().contains("line 3 of the report differs");
+    assertThat(failure).hasCauseThat().hasMessageThat().contains("FAIL: A.java:changed");
+    assertThat(failure).hasCauseThat().hasMessageThat().doesNotContain("B.java:changed");
+    // The failure message summarizes all the differences.
+    assertThat(failure).hasMessageThat().contains("2 removed facts:");
+    assertThat(failure).hasMessageThat().contains("  FAIL: B.java:changed");
+  }
+
+  @Test
+  public void checkConformance_storedReportIsLonger() throws IOException {
+    ConformanceTestRunner runner = new ConformanceTestRunner(ConformanceTestRunnerTest::analyze);
+    Path testReport = temporaryFolder.newFile("report.txt").toPath();
+    Files.write(
+        testReport,
+        (runner.runTests(testDirectory, ImmutableList.of()).report(false) + "extra\n")
+            .getBytes(UTF_8));
+
+    AssertionError failure =
+        assertThrows(
+            AssertionError.class,
+            () -> runner.checkConformance(testDirectory, ImmutableList.of(), testReport));
+    assertThat(failure).hasMessageThat().contains("continues with:");
+    assertThat(failure).hasMessageThat().contains("extra");
+  }
+
+  /**
+   * Reports the first expected fact in each file, plus an unexpected fact in files whose names
+   * start with "A" or "C". Groups found earlier take longer, so that concurrent analyses finish out
+   * of order.
+   */
+  private static ImmutableList<ReportedFact> analyze(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    ImmutableList.Builder<ReportedFact> facts = ImmutableList.builder();
+    for (Path file : files) {
+      Path relativeFile = testDirectory.relativize(file);
+      facts.add(new TestFact(relativeFile, 2, "test:cannot-convert:reported to expected"));
+      String name = file.getFileName().toString();
+      if (name.startsWith("A") || name.startsWith("C")) {
+        facts.add(new TestFact(relativeFile, 4, "test:cannot-convert:unexpected to expected"));
+      }
+    }
+    try {
+      MILLISECONDS.sleep(files.first().getFileName().toString().startsWith("A") ? 100 : 10);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return facts.build();
+  }
+}
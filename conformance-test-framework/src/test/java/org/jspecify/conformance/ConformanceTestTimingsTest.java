@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConformanceTestTimingsTest {
+
+  private static final ConformanceTestTimings TIMINGS =
+      new ConformanceTestTimings(
+          ImmutableMap.of(
+              "a",
+              timing(1_000, 200L, 5_000),
+              "b/\"quoted\"",
+              timing(50, null, -1),
+              "C.java",
+              timing(300, 100L, 7_000)));
+
+  @Test
+  public void writeJson() throws IOException {
+    assertThat(json(TIMINGS))
+        .isEqualTo(
+            "{\n"
+                + "  \"groups\": [\n"
+                + "    {\"group\": \"a\", \"wallMillis\": 1000, \"javacMillis\": 200,"
+                + " \"checkerMillis\": 800, \"peakHeapBytes\": 5000},\n"
+                + "    {\"group\": \"b/\\\"quoted\\\"\", \"wallMillis\": 50, \"javacMillis\": null,"
+                + " \"checkerMillis\": null, \"peakHeapBytes\": null},\n"
+                + "    {\"group\": \"C.java\", \"wallMillis\": 300, \"javacMillis\": 100,"
+                + " \"checkerMillis\": 200, \"peakHeapBytes\": 7000}\n"
+                + "  ]\n"
+                + "}\n");
+    assertThat(json(new ConformanceTestTimings(ImmutableMap.of())))
+        .isEqualTo("{\n  \"groups\": []\n}\n");
+  }
+
+  @Test
+  public void readJson_readsWhatWriteJsonWrote() throws IOException {
+    ConformanceTestTimings read = read(json(TIMINGS));
+
+    assertThat(read.groups().keySet()).containsExactlyElementsIn(TIMINGS.groups().keySet());
+    assertThat(json(read)).isEqualTo(json(TIMINGS));
+  }
+
+  @Test
+  public void regressionsFrom() {
+    ConformanceTestTimings now =
+        new ConformanceTestTimings(
+            ImmutableMap.of(
+                // Slower by more than the tolerance and the threshold.
+                "a",
+                timing(2_000, 300L, 6_000),
+                // Slower by more than the tolerance, but not by the threshold.
+                "b/\"quoted\"",
+                timing(120, null, -1),
+                // Slower by the threshold, but not by more than the tolerance.
+                "C.java",
+                timing(400, 100L, 7_000),
+                // Not in the stored timings.
+                "d",
+                timing(9_000, null, -1)));
+
+    assertThat(now.regressionsFrom(TIMINGS, 0.5, Duration.ofMillis(100)))
+        .containsExactly(
+            "a: 1000 ms -> 2000 ms (+100%); was 1000 ms (javac 200 ms, checker 800 ms), peak heap"
+                + " 5000 bytes, now 2000 ms (javac 300 ms, checker 1700 ms), peak heap 6000 bytes",
+            "all groups: 1350 ms -> 2520 ms (+87%)")
+        .inOrder();
+    assertThat(now.regressionsFrom(TIMINGS, 1.5, Duration.ofMillis(100))).isEmpty();
+    assertThat(TIMINGS.regressionsFrom(TIMINGS, 0, Duration.ZERO)).isEmpty();
+  }
+
+  @Test
+  public void measure_keepsTheAnalyzersOwnTiming() {
+    AnalysisTiming.TimedFacts facts =
+        AnalysisTiming.measure(
+            () -> new AnalysisTiming.TimedFacts(ImmutableList.of(), timing(1_000, 200L, -1)));
+
+    assertThat(facts.timing().wallTime()).isEqualTo(Duration.ofMillis(1_000));
+    assertThat(facts.timing().checkerTime()).isEqualTo(Duration.ofMillis(800));
+    assertThat(facts.timing().peakHeapBytes()).isGreaterThan(0L);
+    assertThat(facts).isEmpty();
+  }
+
+  @Test
+  public void measure_withoutPeakHeap() {
+    AnalysisTiming.TimedFacts facts =
+        AnalysisTiming.measure(() -> ImmutableList.of(), /* measurePeakHeap= */ false);
+
+    assertThat(facts.timing().javacTime()).isNull();
+    assertThat(facts.timing().peakHeapBytes()).isEqualTo(-1);
+    assertThat(facts).isEmpty();
+  }
+
+  private static AnalysisTiming timing(long wallMillis, Long javacMillis, long peakHeapBytes) {
+    return new AnalysisTiming(
+        Duration.ofMillis(wallMillis),
+        javacMillis == null ? null : Duration.ofMillis(javacMillis),
+        peakHeapBytes);
+  }
+
+  private static String json(ConformanceTestTimings timings) throws IOException {
+    StringBuilder json = new StringBuilder();
+    timings.writeJson(json);
+    return json.toString();
+  }
+
+  private static ConformanceTestTimings read(String json) throws IOException {
+    return ConformanceTestTimings.readJson(new BufferedReader(new StringReader(json)));
+  }
+}
@@ -20,6 +20,9 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertThrows;
 
 import com.google.common.collect.ImmutableList;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import org.junit.Test;
@@ -61,6 +64,46 @@ public class ExpectedFactTest {
     reader.checkErrors();
   }
 
+  @Test
+  public void readExpectedFacts_onlyExpectationComments() {
+    assertThat(
+            readExpectedFacts(
+                "\t // test:cannot-convert:type1 to type2 ",
+                "//test:cannot-convert:type3 to type4",
+                "line under test",
+                "code(); // test:cannot-convert:type5 to type6",
+                "/// test:cannot-convert:type7 to type8",
+                "// TEST:cannot-convert:type9 to type10",
+                "// jspecify_nullness_mismatch",
+                "//  jspecify_nullness_mismatch",
+                "// jspecify_nullness_mismatched",
+                "// test:unknown",
+                "another line under test"))
+        .containsExactly(
+            new ExpectedFact(FILE, 2, null, "test:cannot-convert:type1 to type2", 1),
+            new ExpectedFact(FILE, 8, null, "jspecify_nullness_mismatch", 7))
+        .inOrder();
+    reader.checkErrors();
+  }
+
+  @Test
+  public void readExpectedFacts_fromReader() throws IOException {
+    ImmutableList<String> lines =
+        ImmutableList.of(
+            "// test:name:testName",
+            "// test:cannot-convert:type1 to type2",
+            "line under test",
+            "",
+            "  // jspecify_nullness_mismatch",
+            "another line under test");
+    assertThat(
+            new ExpectedFact.Reader()
+                .readExpectedFacts(
+                    FILE, new BufferedReader(new StringReader(String.join("\r\n", lines)))))
+        .containsExactlyElementsIn(readExpectedFacts(lines.toArray(new String[0])))
+        .inOrder();
+  }
+
   @Test
   public void readExpectedFacts_name() {
     assertThat(
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ForkedAnalyzerTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path testDirectory;
+  private ForkedAnalyzer forkedAnalyzer;
+
+  @Before
+  public void setUp() {
+    testDirectory = temporaryFolder.getRoot().toPath();
+    forkedAnalyzer =
+        new ForkedAnalyzer(
+            WorkerAnalyzer.class,
+            TestFactCodec.class,
+            1,
+            Duration.ofSeconds(5),
+            Splitter.on(File.pathSeparatorChar)
+                .omitEmptyStrings()
+                .splitToStream(System.getProperty("java.class.path"))
+                .map(Paths::get)
+                .collect(toImmutableList()),
+            ImmutableList.of());
+  }
+
+  @After
+  public void close() {
+    forkedAnalyzer.close();
+  }
+
+  @Test
+  public void analyze_reusesWorker() {
+    ImmutableList<ReportedFact> first = analyze("A.java");
+    ImmutableList<ReportedFact> second = analyze("B.java");
+
+    assertThat(first).hasSize(1);
+    assertThat(first.get(0).getFile().toString()).isEqualTo("A.java");
+    assertThat(first.get(0).getLineNumber()).isEqualTo(1);
+    assertThat(second.get(0).getFile().toString()).isEqualTo("B.java");
+    assertThat(processId(second)).isEqualTo(processId(first));
+    assertThat(processId(first)).isNotEqualTo(ProcessHandle.current().pid());
+  }
+
+  @Test
+  public void analyze_returnsWorkersTiming() {
+    AnalysisTiming timing = analyzeTimed("A.java").timing();
+
+    assertThat(timing.peakHeapBytes()).isGreaterThan(0L);
+    assertThat(timing.javacTime()).isNull();
+  }
+
+  @Test
+  public void analyze_crashedWorkerIsReplacedAndGroupRetried() {
+    ImmutableList<ReportedFact> before = analyze("A.java");
+    ImmutableList<ReportedFact> retried = analyze("CrashOnce.java");
+    ImmutableList<ReportedFact> after = analyze("B.java");
+
+    assertThat(retried.get(0).getFile().toString()).isEqualTo("CrashOnce.java");
+    assertThat(processId(retried)).isNotEqualTo(processId(before));
+    assertThat(processId(after)).isEqualTo(processId(retried));
+  }
+
+  @Test
+  public void analyze_crashesTwice() {
+    UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> analyze("Crash.java"));
+    assertThat(e).hasMessageThat().contains("crashed twice");
+
+    assertThat(analyze("A.java")).hasSize(1);
+  }
+
+  @Test
+  public void analyze_timesOut() {
+    UncheckedTimeoutException e =
+        assertThrows(UncheckedTimeoutException.class, () -> analyze("Slow.java"));
+    assertThat(e).hasMessageThat().contains("Slow.java");
+
+    assertThat(analyze("A.java")).hasSize(1);
+  }
+
+  @Test
+  public void analyze_analysisFailure() {
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> analyze("Fail.java"));
+    assertThat(e).hasMessageThat().contains("analysis failed on purpose");
+  }
+
+  private ImmutableList<ReportedFact> analyze(String file) {
+    return ImmutableList.copyOf(analyzeTimed(file));
+  }
+
+  private AnalysisTiming.TimedFacts analyzeTimed(String file) {
+    return forkedAnalyzer.analyze(
+        testDirectory, ImmutableSortedSet.of(testDirectory.resolve(file)), ImmutableList.of());
+  }
+
+  private static String processId(ImmutableList<ReportedFact> facts) {
+    return facts.get(0).getFactText();
+  }
+
+  /**
+   * Reports one fact for each file, whose text is the worker's process ID. Misbehaves for some file
+   * names.
+   */
+  static final class WorkerAnalyzer implements ConformanceTestRunner.Analyzer {
+    @Override
+    public ImmutableList<ReportedFact> analyze(
+        Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+      ImmutableList.Builder<ReportedFact> facts = ImmutableList.builder();
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.equals("Crash.java")) {
+          System.exit(3);
+        }
+        if (name.equals("CrashOnce.java")) {
+          Path marker = testDirectory.resolve("crashed");
+          if (!Files.exists(marker)) {
+            try {
+              Files.createFile(marker);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            System.exit(3);
+          }
+        }
+        if (name.equals("Slow.java")) {
+          try {
+            Thread.sleep(60_000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        if (name.equals("Fail.java")) {
+          throw new IllegalStateException("analysis failed on purpose");
+        }
+        // Anything written to System.out mustn't corrupt the responses.
+        System.out.println("analyzing " + file);
+        facts.add(
+            new TestFact(
+                testDirectory.relativize(file), 1, String.valueOf(ProcessHandle.current().pid())));
+      }
+      return facts.build();
+    }
+  }
+}
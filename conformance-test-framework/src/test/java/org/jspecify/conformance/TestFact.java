@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import java.nio.file.Path;
+
+/** A reported fact with given text, for tests. */
+final class TestFact extends ReportedFact {
+  private final String factText;
+  private final boolean mustBeExpected;
+
+  /** Creates a fact that must be expected. */
+  TestFact(Path file, long lineNumber, String factText) {
+    this(file, lineNumber, factText, true);
+  }
+
+  TestFact(Path file, long lineNumber, String factText, boolean mustBeExpected) {
+    super(file, lineNumber);
+    this.factText = factText;
+    this.mustBeExpected = mustBeExpected;
+  }
+
+  @Override
+  protected String getFactText() {
+    return factText;
+  }
+
+  @Override
+  protected boolean mustBeExpected() {
+    return mustBeExpected;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 The JSpecify Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jspecify.conformance;
+
+import com.google.common.base.Splitter;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Encodes the file, line number, and text of a fact, and decodes them as a {@link TestFact} that
+ * must be expected.
+ */
+final class TestFactCodec implements CachingAnalyzer.FactCodec {
+  @Override
+  public String encode(ReportedFact fact) {
+    return String.join(
+        "\n", fact.getFile().toString(), "" + fact.getLineNumber(), fact.getFactText());
+  }
+
+  @Override
+  public ReportedFact decode(String text) {
+    List<String> parts = Splitter.on('\n').splitToList(text);
+    return new TestFact(Paths.get(parts.get(0)), Long.parseLong(parts.get(1)), parts.get(2));
+  }
+}
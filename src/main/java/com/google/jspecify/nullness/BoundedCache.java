@@ -0,0 +1,87 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A least-recently-used cache with a maximum number of entries that counts its hits, misses, and
+ * evictions, for {@code -AcacheStats}.
+ *
+ * <p>This is the same kind of cache that the Checker Framework creates for its own type caches
+ * (with {@code CollectionUtils.createLRUCache}), plus the counters.
+ */
+final class BoundedCache<K, V> {
+  private final String name;
+  private final int maxSize;
+  private final LinkedHashMap<K, V> entries;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  BoundedCache(String name, int maxSize) {
+    this.name = name;
+    this.maxSize = maxSize;
+    this.entries =
+        new LinkedHashMap<K, V>(16, 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > BoundedCache.this.maxSize) {
+              evictions++;
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /** Returns the cached value for {@code key}, computing and caching it if necessary. */
+  V get(K key, Function<? super K, ? extends V> compute) {
+    V value = entries.get(key);
+    if (value != null) {
+      hits++;
+      return value;
+    }
+    misses++;
+    value = compute.apply(key);
+    if (value != null) {
+      entries.put(key, value);
+    }
+    return value;
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  /** Appends one line describing the cache's size and counters. */
+  void appendStats(StringBuilder out, String prefix) {
+    long lookups = hits + misses;
+    out.append(
+        String.format(
+            "%s%s: %,d hits, %,d misses (%.1f%% hit rate), %,d evictions, %,d/%,d entries%n",
+            prefix,
+            name,
+            hits,
+            misses,
+            lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+            evictions,
+            entries.size(),
+            maxSize));
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.tools.Diagnostic;
+
+/**
+ * A diagnostic reported by {@link NullSpecChecker}, in the form that its machine-readable outputs
+ * (like {@code -AdiagnosticsOut}) write it.
+ *
+ * <p>Consumers of the text output have to recover this structure by parsing {@code
+ * -Adetailedmsgtext} messages (see {@code tests.DetailMessage}). This class lets us skip that by
+ * capturing it when the diagnostic is reported.
+ */
+final class CheckerDiagnostic {
+  /*
+   * These are the keys whose last two message arguments are the source type and the sink type of a
+   * failed conversion. The list must be kept in sync with the one in ConformanceTest, which
+   * CheckerDiagnosticTest checks.
+   */
+  static final Set<String> CANNOT_CONVERT_KEYS =
+      unmodifiableSet(
+          new HashSet<>(
+              asList(
+                  "argument",
+                  "assignment",
+                  "atomicreference.must.include.null",
+                  "cast.unsafe",
+                  "lambda.param",
+                  "methodref.receiver.bound",
+                  "methodref.receiver",
+                  "methodref.return",
+                  "override.param",
+                  "override.return",
+                  "return",
+                  "threadlocal.must.include.null",
+                  "type.argument")));
+
+  final Diagnostic.Kind kind;
+  /** The path of the source file, or {@code null} if the diagnostic has no position. */
+  final String file;
+  /** The offset of the start of the code covered by the diagnostic, or -1 if unknown. */
+  final long startOffset;
+  /** The offset of the end (exclusive) of the code covered by the diagnostic, or -1 if unknown. */
+  final long endOffset;
+  /** The 1-based line of {@link #startOffset}, or -1 if unknown. */
+  final long line;
+  /** The 1-based column of {@link #startOffset}, or -1 if unknown. */
+  final long column;
+  final String messageKey;
+  final String message;
+  final List<String> arguments;
+
+  CheckerDiagnostic(
+      Diagnostic.Kind kind,
+      String file,
+      long startOffset,
+      long endOffset,
+      long line,
+      long column,
+      String messageKey,
+      String message,
+      Object[] arguments) {
+    this.kind = kind;
+    this.file = file;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.line = line;
+    this.column = column;
+    this.messageKey = messageKey;
+    this.message = message;
+    List<String> argumentStrings = new ArrayList<>(arguments.length);
+    for (Object argument : arguments) {
+      argumentStrings.add(String.valueOf(argument));
+    }
+    this.arguments = unmodifiableList(argumentStrings);
+  }
+
+  /** Whether the diagnostic reports a value of {@link #sourceType} flowing to {@link #sinkType}. */
+  boolean isCannotConvert() {
+    return CANNOT_CONVERT_KEYS.contains(messageKey) && arguments.size() >= 2;
+  }
+
+  /** The type of the value that can't be converted. Valid only if {@link #isCannotConvert}. */
+  String sourceType() {
+    return arguments.get(arguments.size() - 2);
+  }
+
+  /** The type that the value can't be converted to. Valid only if {@link #isCannotConvert}. */
+  String sinkType() {
+    return arguments.get(arguments.size() - 1);
+  }
+
+  /**
+   * Rewrites a type as printed by the checker into the form that JSpecify conformance tests use:
+   * Nullness sigils ({@code ?}, {@code !}, and {@code *}) move from after the type arguments to
+   * before them, and a type without a sigil gets {@code !}.
+   *
+   * <p>This is the same rewriting that {@code ConformanceTest} performs with a regex, except that
+   * commas inside nested type arguments are handled properly.
+   */
+  static String jspecifyType(String type) {
+    StringBuilder result = new StringBuilder(type.length() + 4);
+    return appendJspecifyType(result, type, 0, type.length()) ? result.toString() : type;
+  }
+
+  /**
+   * Appends the JSpecify form of {@code type.substring(start, end)}, returning false if that text
+   * isn't a type in the form we expect.
+   */
+  private static boolean appendJspecifyType(StringBuilder result, String type, int start, int end) {
+    int rawEnd = start;
+    while (rawEnd < end && !isSpecial(type.charAt(rawEnd))) {
+      rawEnd++;
+    }
+    if (rawEnd == start) {
+      return false;
+    }
+    int argsStart = -1;
+    int argsEnd = -1;
+    int suffixStart = rawEnd;
+    if (rawEnd < end && type.charAt(rawEnd) == '<') {
+      argsStart = rawEnd + 1;
+      argsEnd = matchingCloseBracket(type, rawEnd, end);
+      if (argsEnd < 0) {
+        return false;
+      }
+      suffixStart = argsEnd + 1;
+    }
+    char suffix = '!';
+    if (suffixStart < end) {
+      suffix = type.charAt(suffixStart);
+      if (suffixStart + 1 != end || (suffix != '?' && suffix != '!' && suffix != '*')) {
+        return false;
+      }
+      if (argsStart < 0) {
+        // Already in JSpecify form.
+        result.append(type, start, end);
+        return true;
+      }
+    }
+    result.append(type, start, rawEnd).append(suffix);
+    if (argsStart < 0) {
+      return true;
+    }
+    result.append('<');
+    int argStart = argsStart;
+    int depth = 0;
+    for (int i = argsStart; i <= argsEnd; i++) {
+      char c = i == argsEnd ? ',' : type.charAt(i);
+      if (c == '<') {
+        depth++;
+      } else if (c == '>') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        if (argStart != argsStart) {
+          result.append(',');
+        }
+        int trimmedStart = argStart;
+        int trimmedEnd = i;
+        while (trimmedStart < trimmedEnd && type.charAt(trimmedStart) == ' ') {
+          trimmedStart++;
+        }
+        while (trimmedEnd > trimmedStart && type.charAt(trimmedEnd - 1) == ' ') {
+          trimmedEnd--;
+        }
+        if (!appendJspecifyType(result, type, trimmedStart, trimmedEnd)) {
+          // Keep unrecognized arguments (like wildcards with bounds) as they are.
+          result.append(type, trimmedStart, trimmedEnd);
+        }
+        argStart = i + 1;
+      }
+    }
+    result.append('>');
+    return true;
+  }
+
+  private static boolean isSpecial(char c) {
+    return c == '<' || c == ',' || c == '?' || c == '!' || c == '*';
+  }
+
+  /** Returns the index of the {@code >} that closes the {@code <} at {@code open}, or -1. */
+  private static int matchingCloseBracket(String type, int open, int end) {
+    int depth = 0;
+    for (int i = open; i < end; i++) {
+      char c = type.charAt(i);
+      if (c == '<') {
+        depth++;
+      } else if (c == '>' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static javax.tools.StandardLocation.SOURCE_OUTPUT;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * Decides which top-level classes {@link NullSpecChecker#typeProcess} should not check at all, as
+ * requested by the "skipGenerated" and "skipPackages" options, and keeps count of them.
+ *
+ * <p>The decision looks only at the class's element and its compilation unit's file name, so it
+ * happens before any tree work. Skipping a class doesn't affect how <i>other</i> classes see it:
+ * Its signatures are still read (and defaulted) from its elements whenever other code uses it.
+ */
+final class ClassSkipper {
+  enum Reason {
+    GENERATED,
+    PACKAGE,
+  }
+
+  private final Elements elements;
+  private final boolean skipGenerated;
+  private final PackagePrefixTrie skippedPackages;
+  /** URI prefixes of the directories that annotation processors write sources to. */
+  private final List<String> generatedSourceDirectories;
+
+  /*
+   * typeProcess sees all the top-level classes of a compilation unit in a row, so we remember the
+   * answer for only the most recent one.
+   */
+  private CompilationUnitTree lastRoot;
+  private boolean lastRootInGeneratedSourceDirectory;
+
+  private int skippedGenerated;
+  private int skippedPackage;
+
+  /**
+   * Creates a skipper for the given options. {@code skippedPackages} is a comma-separated list of
+   * package names (each of which also covers its subpackages), or {@code null}.
+   */
+  ClassSkipper(
+      Elements elements,
+      JavaFileManager fileManager,
+      boolean skipGenerated,
+      String skippedPackages) {
+    this.elements = elements;
+    this.skipGenerated = skipGenerated;
+    this.skippedPackages = new PackagePrefixTrie();
+    if (skippedPackages != null) {
+      for (String skippedPackage : skippedPackages.split(",")) {
+        if (!skippedPackage.trim().isEmpty()) {
+          this.skippedPackages.add(skippedPackage.trim());
+        }
+      }
+    }
+    this.generatedSourceDirectories = new ArrayList<>();
+    if (skipGenerated && fileManager instanceof StandardJavaFileManager) {
+      Iterable<? extends File> directories =
+          ((StandardJavaFileManager) fileManager).getLocation(SOURCE_OUTPUT);
+      if (directories != null) {
+        for (File directory : directories) {
+          String uri = directory.getAbsoluteFile().toURI().toString();
+          generatedSourceDirectories.add(uri.endsWith("/") ? uri : uri + "/");
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns why {@code element} (a top-level class) should be skipped, or {@code null} if it should
+   * be checked. Also counts the skipped class.
+   */
+  Reason skip(TypeElement element, TreePath path) {
+    Reason reason = reason(element, path);
+    if (reason == Reason.GENERATED) {
+      skippedGenerated++;
+    } else if (reason == Reason.PACKAGE) {
+      skippedPackage++;
+    }
+    return reason;
+  }
+
+  private Reason reason(TypeElement element, TreePath path) {
+    if (!skippedPackages.isEmpty()) {
+      PackageElement pkg = elements.getPackageOf(element);
+      if (skippedPackages.matches(pkg.getQualifiedName())) {
+        return Reason.PACKAGE;
+      }
+    }
+    if (skipGenerated
+        && (hasGeneratedAnnotation(element)
+            || isInGeneratedSourceDirectory(path.getCompilationUnit()))) {
+      return Reason.GENERATED;
+    }
+    return null;
+  }
+
+  /**
+   * Whether the class has an annotation named {@code Generated}: {@code
+   * javax.annotation.processing.Generated}, {@code javax.annotation.Generated}, or one of the
+   * similar annotations that other generators use.
+   */
+  private static boolean hasGeneratedAnnotation(Element element) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      if (Util.nameMatches(annotation, "Generated")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isInGeneratedSourceDirectory(CompilationUnitTree root) {
+    if (generatedSourceDirectories.isEmpty()) {
+      return false;
+    }
+    if (root != lastRoot) {
+      String file = root.getSourceFile().toUri().toString();
+      lastRoot = root;
+      lastRootInGeneratedSourceDirectory = false;
+      for (String directory : generatedSourceDirectories) {
+        if (file.startsWith(directory)) {
+          lastRootInGeneratedSourceDirectory = true;
+          break;
+        }
+      }
+    }
+    return lastRootInGeneratedSourceDirectory;
+  }
+
+  int skippedGenerated() {
+    return skippedGenerated;
+  }
+
+  int skippedPackage() {
+    return skippedPackage;
+  }
+
+  /**
+   * A set of package names, each of which also matches its subpackages. A lookup walks the package
+   * name's segments once, no matter how many packages the set holds.
+   */
+  private static final class PackagePrefixTrie {
+    private final Node root = new Node();
+
+    private static final class Node {
+      final Map<String, Node> children = new HashMap<>();
+      boolean terminal;
+    }
+
+    void add(String packageName) {
+      Node node = root;
+      for (String segment : packageName.split("\\.")) {
+        node = node.children.computeIfAbsent(segment, s -> new Node());
+      }
+      node.terminal = true;
+    }
+
+    boolean isEmpty() {
+      return root.children.isEmpty();
+    }
+
+    boolean matches(CharSequence packageName) {
+      Node node = root;
+      int segmentStart = 0;
+      int length = packageName.length();
+      while (segmentStart < length) {
+        int segmentEnd = segmentStart;
+        while (segmentEnd < length && packageName.charAt(segmentEnd) != '.') {
+          segmentEnd++;
+        }
+        node = node.children.get(packageName.subSequence(segmentStart, segmentEnd).toString());
+        if (node == null) {
+          return false;
+        }
+        if (node.terminal) {
+          return true;
+        }
+        segmentStart = segmentEnd + 1;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ROOT;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.tools.Diagnostic;
+
+/**
+ * Writes {@link CheckerDiagnostic}s to a file as JSON lines: one JSON object per diagnostic, one
+ * diagnostic per line. This is the implementation of the {@code -AdiagnosticsOut} option.
+ *
+ * <p>Each object has the fields {@code file}, {@code kind}, {@code line}, {@code column}, {@code
+ * startOffset}, {@code endOffset}, {@code messageKey}, {@code message}, and {@code arguments}.
+ * {@code kind} and {@code message} are the kind and text that the compiler prints for the
+ * diagnostic, after options like {@code -Awarns} and {@code -Adetailedmsgtext} apply.
+ * Diagnostics about a value whose type can't be converted to the type it flows to additionally
+ * have {@code sourceType} and {@code sinkType} (as the checker prints them) and {@code
+ * jspecifySourceType} and {@code jspecifySinkType} (as the JSpecify conformance tests write them).
+ *
+ * <p>Records are written as they are reported, through a buffer, so memory use doesn't grow with
+ * the number of diagnostics.
+ */
+final class DiagnosticsJsonWriter implements DiagnosticSink {
+  private final BufferedWriter out;
+  /** Reused across records to avoid allocating a builder per diagnostic. */
+  private final StringBuilder record = new StringBuilder(256);
+
+  DiagnosticsJsonWriter(Path file) throws IOException {
+    this.out = Files.newBufferedWriter(file, UTF_8);
+  }
+
+  @Override
+  public void write(CheckerDiagnostic diagnostic) {
+    record.setLength(0);
+    record.append('{');
+    if (diagnostic.file != null) {
+      Json.appendString(Json.appendName(record, "file"), diagnostic.file);
+    }
+    Json.appendString(Json.appendName(record, "kind"), kindName(diagnostic.kind));
+    Json.appendName(record, "line").append(diagnostic.line);
+    Json.appendName(record, "column").append(diagnostic.column);
+    Json.appendName(record, "startOffset").append(diagnostic.startOffset);
+    Json.appendName(record, "endOffset").append(diagnostic.endOffset);
+    Json.appendString(Json.appendName(record, "messageKey"), diagnostic.messageKey);
+    Json.appendString(Json.appendName(record, "message"), diagnostic.message);
+    Json.appendName(record, "arguments").append('[');
+    for (int i = 0; i < diagnostic.arguments.size(); i++) {
+      if (i > 0) {
+        record.append(',');
+      }
+      Json.appendString(record, diagnostic.arguments.get(i));
+    }
+    record.append(']');
+    if (diagnostic.isCannotConvert()) {
+      String sourceType = diagnostic.sourceType();
+      String sinkType = diagnostic.sinkType();
+      Json.appendString(Json.appendName(record, "sourceType"), sourceType);
+      Json.appendString(Json.appendName(record, "sinkType"), sinkType);
+      Json.appendString(
+          Json.appendName(record, "jspecifySourceType"),
+          CheckerDiagnostic.jspecifyType(sourceType));
+      Json.appendString(
+          Json.appendName(record, "jspecifySinkType"), CheckerDiagnostic.jspecifyType(sinkType));
+    }
+    record.append("}\n");
+    try {
+      out.append(record);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the kind as javac prints it: "error", "warning", or "note". */
+  static String kindName(Diagnostic.Kind kind) {
+    switch (kind) {
+      case ERROR:
+        return "error";
+      case WARNING:
+      case MANDATORY_WARNING:
+        return "warning";
+      default:
+        return kind.name().toLowerCase(ROOT);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+/** Minimal helpers for writing the JSON in the checker's machine-readable outputs. */
+final class Json {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** Appends {@code value} as a quoted JSON string. */
+  static StringBuilder appendString(StringBuilder out, String value) {
+    out.append('"');
+    int unescapedStart = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        continue;
+      }
+      out.append(value, unescapedStart, i);
+      unescapedStart = i + 1;
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+      }
+    }
+    return out.append(value, unescapedStart, value.length()).append('"');
+  }
+
+  /** Appends {@code "name":} to {@code out}, preceded by a comma unless it starts the object. */
+  static StringBuilder appendName(StringBuilder out, String name) {
+    char last = out.charAt(out.length() - 1);
+    if (last != '{' && last != '[') {
+      out.append(',');
+    }
+    return appendString(out, name).append(':');
+  }
+
+  private Json() {}
+}
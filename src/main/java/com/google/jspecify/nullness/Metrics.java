@@ -0,0 +1,286 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Counts of the work that the checker does, for {@code -Ametrics}, {@code -AmetricsJson}, and
+ * {@code -AmetricsPrometheus}. See {@link MetricsExporter} for the output formats.
+ *
+ * <p>Javac runs the checker on a single thread, but the instruments are safe to update from any
+ * thread without locking: Counters are {@link LongAdder}s, and histograms keep their buckets in an
+ * {@link AtomicLongArray}. When no metrics option is set, the checker uses {@link #DISABLED},
+ * whose instruments do nothing, so that the instrumented code paths pay only for a field read and a
+ * branch.
+ */
+final class Metrics {
+  static final Metrics DISABLED = new Metrics(/* enabled= */ false);
+
+  private final boolean enabled;
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  final Counter subtypeQueries;
+  final Counter nullExclusiveQueries;
+  final Counter dataflowNodeVisits;
+  final Counter returnSummaryRefinements;
+  final Histogram dataflowNodeVisitsPerAnalysis;
+  final Histogram classCheckingNanos;
+
+  Metrics() {
+    this(/* enabled= */ true);
+  }
+
+  private Metrics(boolean enabled) {
+    this.enabled = enabled;
+    subtypeQueries =
+        counter("subtype_queries", "Calls to TypeHierarchy.isSubtype, in either world.");
+    nullExclusiveQueries =
+        counter(
+            "null_exclusive_queries",
+            "Calls to isNullExclusiveUnderEveryParameterization, in either world.");
+    dataflowNodeVisits =
+        counter("dataflow_node_visits", "Times the dataflow analysis ran the transfer function.");
+    returnSummaryRefinements =
+        counter(
+            "return_summary_refinements",
+            "Method invocations whose result NullSpecTransfer refined from a return summary.");
+    dataflowNodeVisitsPerAnalysis =
+        histogram(
+            "dataflow_node_visits_per_analysis",
+            "Transfer-function runs per method, lambda, or initializer that dataflow analyzed.");
+    classCheckingNanos =
+        histogram("class_checking_nanos", "Time spent checking each top-level class.");
+  }
+
+  boolean enabled() {
+    return enabled;
+  }
+
+  /** Counts a call to {@code method} whose result or stores {@link NullSpecTransfer} refined. */
+  void transferSpecialCase(ExecutableElement method) {
+    if (enabled) {
+      counter(
+              "transfer_special_cases",
+              "Method invocations whose result or stores NullSpecTransfer special-cased.",
+              "method",
+              methodLabel(method))
+          .increment();
+    }
+  }
+
+  /** Counts a call to {@code method} whose type the factory's tree annotator special-cased. */
+  void treeAnnotatorSpecialCase(ExecutableElement method) {
+    if (enabled) {
+      counter(
+              "tree_annotator_special_cases",
+              "Method invocations whose type NullSpecTreeAnnotator special-cased.",
+              "method",
+              methodLabel(method))
+          .increment();
+    }
+  }
+
+  /** Counts a diagnostic that was reported (and not suppressed). */
+  void diagnostic(String messageKey) {
+    if (enabled) {
+      counter("diagnostics", "Diagnostics reported, by message key.", "key", messageKey)
+          .increment();
+    }
+  }
+
+  Counter counter(String name, String help) {
+    return counter(name, help, null, null);
+  }
+
+  /**
+   * Returns the counter with the given name and label, creating it if necessary. {@code labelName}
+   * and {@code labelValue} may both be null for an unlabeled counter.
+   */
+  Counter counter(String name, String help, String labelName, String labelValue) {
+    if (!enabled) {
+      return Counter.NOOP;
+    }
+    String key = labelName == null ? name : name + '{' + labelName + '=' + labelValue + '}';
+    Counter counter = counters.get(key);
+    return counter != null
+        ? counter
+        : counters.computeIfAbsent(key, k -> new Counter(name, help, labelName, labelValue));
+  }
+
+  Histogram histogram(String name, String help) {
+    if (!enabled) {
+      return Histogram.NOOP;
+    }
+    return histograms.computeIfAbsent(name, k -> new Histogram(name, help));
+  }
+
+  /**
+   * Returns a label like {@code java.util.Map.get}. Only the special-cased methods get labels, so
+   * the number of distinct labels stays small.
+   */
+  private static String methodLabel(ExecutableElement method) {
+    return ((TypeElement) method.getEnclosingElement()).getQualifiedName()
+        + "."
+        + method.getSimpleName();
+  }
+
+  /** Returns the counters, sorted by name and then by label value. */
+  List<Counter> counters() {
+    return new ArrayList<>(new TreeMap<>(counters).values());
+  }
+
+  /** Returns the histograms, sorted by name. */
+  List<Histogram> histograms() {
+    return new ArrayList<>(new TreeMap<>(histograms).values());
+  }
+
+  /** A counter, optionally with one label (like the message key of a diagnostic). */
+  static final class Counter {
+    static final Counter NOOP = new Counter(null, null, null, null);
+
+    final String name;
+    final String help;
+    /** The name of the label, or {@code null} if the counter is unlabeled. */
+    final String labelName;
+
+    final String labelValue;
+    private final LongAdder count;
+
+    private Counter(String name, String help, String labelName, String labelValue) {
+      this.name = name;
+      this.help = help;
+      this.labelName = labelName;
+      this.labelValue = labelValue;
+      this.count = name == null ? null : new LongAdder();
+    }
+
+    void increment() {
+      if (count != null) {
+        count.increment();
+      }
+    }
+
+    long get() {
+      return count == null ? 0 : count.sum();
+    }
+  }
+
+  /**
+   * A histogram with log-linear buckets, in the style of HdrHistogram: Each power of two is split
+   * into {@link #SUB_BUCKETS} equal buckets, so a value's bucket bounds it to within 25%. That's
+   * 248 buckets for all nonnegative longs, so there's no need to configure a range up front.
+   */
+  static final class Histogram {
+    static final Histogram NOOP = new Histogram(null, null);
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    final String name;
+    final String help;
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    private Histogram(String name, String help) {
+      this.name = name;
+      this.help = help;
+      this.buckets = name == null ? null : new AtomicLongArray(BUCKETS);
+    }
+
+    /** Records {@code value}, which must be nonnegative (negative values are recorded as 0). */
+    void record(long value) {
+      if (buckets == null) {
+        return;
+      }
+      value = Math.max(value, 0);
+      buckets.incrementAndGet(bucketIndex(value));
+      count.increment();
+      sum.add(value);
+    }
+
+    long count() {
+      return count.sum();
+    }
+
+    long sum() {
+      return sum.sum();
+    }
+
+    /** Returns the number of recorded values in each bucket (not cumulative). */
+    long[] bucketCounts() {
+      long[] result = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        result[i] = buckets == null ? 0 : buckets.get(i);
+      }
+      return result;
+    }
+
+    /**
+     * Returns the smallest bucket upper bound that at least {@code quantile} (between 0 and 1) of
+     * the recorded values are less than or equal to, or 0 if nothing was recorded.
+     */
+    long quantileUpperBound(double quantile) {
+      long[] counts = bucketCounts();
+      long total = 0;
+      for (long c : counts) {
+        total += c;
+      }
+      long target = (long) Math.ceil(quantile * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts[i];
+        if (seen > 0 && seen >= target) {
+          return bucketUpperBound(i);
+        }
+      }
+      return 0;
+    }
+
+    static int bucketIndex(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int exponent = 63 - numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the largest value that falls into bucket {@code index}. */
+    static long bucketUpperBound(int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+      int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      long subBucket = index % SUB_BUCKETS;
+      long nextLowerBound = (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+      // The last bucket's next lower bound overflows to Long.MIN_VALUE.
+      return nextLowerBound < 0 ? Long.MAX_VALUE : nextLowerBound - 1;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.tools.Diagnostic.Kind.NOTE;
+
+import com.google.jspecify.nullness.Metrics.Counter;
+import com.google.jspecify.nullness.Metrics.Histogram;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.annotation.processing.Messager;
+
+/**
+ * Writes the {@link Metrics} of a compilation somewhere at the end of that compilation. {@link
+ * NullSpecChecker} creates one for each metrics option that is set:
+ *
+ * <ul>
+ *   <li>{@code -Ametrics}: {@link TextSummary}
+ *   <li>{@code -AmetricsJson=file}: {@link JsonFile}
+ *   <li>{@code -AmetricsPrometheus=file}: {@link PrometheusFile}
+ * </ul>
+ */
+interface MetricsExporter {
+  /** The prefix of every metric name in the machine-readable outputs. */
+  String NAME_PREFIX = "nullness_";
+
+  void export(Metrics metrics) throws IOException;
+
+  /**
+   * Prints the metrics as a compiler note: each counter's value, and each histogram's count, mean,
+   * and the upper bounds of the buckets that hold its median, 90th, and 99th percentile.
+   */
+  final class TextSummary implements MetricsExporter {
+    private final Messager messager;
+
+    TextSummary(Messager messager) {
+      this.messager = messager;
+    }
+
+    @Override
+    public void export(Metrics metrics) {
+      StringBuilder out = new StringBuilder("Nullness checker metrics:\n");
+      for (Counter counter : metrics.counters()) {
+        out.append(counter.name);
+        if (counter.labelName != null) {
+          out.append('{').append(counter.labelName).append('=').append(counter.labelValue);
+          out.append('}');
+        }
+        out.append(String.format(": %,d%n", counter.get()));
+      }
+      for (Histogram histogram : metrics.histograms()) {
+        long count = histogram.count();
+        out.append(
+            String.format(
+                "%s: count %,d, mean %,.1f, p50 <= %,d, p90 <= %,d, p99 <= %,d%n",
+                histogram.name,
+                count,
+                count == 0 ? 0.0 : (double) histogram.sum() / count,
+                histogram.quantileUpperBound(0.5),
+                histogram.quantileUpperBound(0.9),
+                histogram.quantileUpperBound(0.99)));
+      }
+      messager.printMessage(NOTE, out);
+    }
+  }
+
+  /**
+   * Writes the metrics to a file as a single JSON object with two fields:
+   *
+   * <ul>
+   *   <li>{@code counters}: an array of objects with the fields {@code name}, {@code value}, and
+   *       (for labeled counters) {@code labels}, an object that maps the label name to its value
+   *   <li>{@code histograms}: an array of objects with the fields {@code name}, {@code count},
+   *       {@code sum}, and {@code buckets}, an array of the nonempty buckets as objects with the
+   *       fields {@code le} (the largest value in the bucket) and {@code count}
+   * </ul>
+   */
+  final class JsonFile implements MetricsExporter {
+    private final Path file;
+
+    JsonFile(Path file) {
+      this.file = file;
+    }
+
+    @Override
+    public void export(Metrics metrics) throws IOException {
+      StringBuilder out = new StringBuilder();
+      out.append('{');
+      Json.appendName(out, "counters").append('[');
+      for (Counter counter : metrics.counters()) {
+        if (out.charAt(out.length() - 1) != '[') {
+          out.append(',');
+        }
+        out.append('{');
+        Json.appendString(Json.appendName(out, "name"), NAME_PREFIX + counter.name);
+        if (counter.labelName != null) {
+          Json.appendName(out, "labels").append('{');
+          Json.appendString(Json.appendName(out, counter.labelName), counter.labelValue);
+          out.append('}');
+        }
+        Json.appendName(out, "value").append(counter.get());
+        out.append('}');
+      }
+      out.append(']');
+      Json.appendName(out, "histograms").append('[');
+      for (Histogram histogram : metrics.histograms()) {
+        if (out.charAt(out.length() - 1) != '[') {
+          out.append(',');
+        }
+        out.append('{');
+        Json.appendString(Json.appendName(out, "name"), NAME_PREFIX + histogram.name);
+        Json.appendName(out, "count").append(histogram.count());
+        Json.appendName(out, "sum").append(histogram.sum());
+        Json.appendName(out, "buckets").append('[');
+        long[] counts = histogram.bucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+          if (counts[i] == 0) {
+            continue;
+          }
+          if (out.charAt(out.length() - 1) != '[') {
+            out.append(',');
+          }
+          out.append('{');
+          Json.appendName(out, "le").append(Histogram.bucketUpperBound(i));
+          Json.appendName(out, "count").append(counts[i]);
+          out.append('}');
+        }
+        out.append("]}");
+      }
+      out.append("]}\n");
+      Files.write(file, out.toString().getBytes(UTF_8));
+    }
+  }
+
+  /**
+   * Writes the metrics to a file in the Prometheus text exposition format, as read by the node
+   * exporter's textfile collector (among others). Counters get the conventional {@code _total}
+   * suffix. Histograms get cumulative {@code _bucket} series from the smallest to the largest
+   * nonempty bucket, plus {@code _sum} and {@code _count}.
+   */
+  final class PrometheusFile implements MetricsExporter {
+    private final Path file;
+
+    PrometheusFile(Path file) {
+      this.file = file;
+    }
+
+    @Override
+    public void export(Metrics metrics) throws IOException {
+      StringBuilder out = new StringBuilder();
+      String previousName = null;
+      for (Counter counter : metrics.counters()) {
+        String name = NAME_PREFIX + counter.name + "_total";
+        if (!name.equals(previousName)) {
+          appendHeader(out, name, counter.help, "counter");
+          previousName = name;
+        }
+        out.append(name);
+        if (counter.labelName != null) {
+          out.append('{').append(counter.labelName).append("=\"");
+          appendLabelValue(out, counter.labelValue).append("\"}");
+        }
+        out.append(' ').append(counter.get()).append('\n');
+      }
+      for (Histogram histogram : metrics.histograms()) {
+        String name = NAME_PREFIX + histogram.name;
+        appendHeader(out, name, histogram.help, "histogram");
+        long[] counts = histogram.bucketCounts();
+        int first = 0;
+        while (first < counts.length && counts[first] == 0) {
+          first++;
+        }
+        int last = counts.length - 1;
+        while (last >= 0 && counts[last] == 0) {
+          last--;
+        }
+        long cumulative = 0;
+        for (int i = first; i <= last; i++) {
+          cumulative += counts[i];
+          out.append(name).append("_bucket{le=\"").append(Histogram.bucketUpperBound(i));
+          out.append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(histogram.count()).append('\n');
+        out.append(name).append("_sum ").append(histogram.sum()).append('\n');
+        out.append(name).append("_count ").append(histogram.count()).append('\n');
+      }
+      Files.write(file, out.toString().getBytes(UTF_8));
+    }
+
+    private static void appendHeader(StringBuilder out, String name, String help, String type) {
+      out.append("# HELP ").append(name).append(' ');
+      out.append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static StringBuilder appendLabelValue(StringBuilder out, String value) {
+      return out.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+    }
+  }
+}
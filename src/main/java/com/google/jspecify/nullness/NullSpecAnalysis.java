@@ -14,16 +14,72 @@
 
 package com.google.jspecify.nullness;
 
+import java.util.List;
 import java.util.Set;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.type.TypeMirror;
 import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.dataflow.analysis.TransferInput;
+import org.checkerframework.dataflow.analysis.TransferResult;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.node.Node;
 import org.checkerframework.framework.flow.CFAbstractAnalysis;
 import org.checkerframework.framework.flow.CFValue;
 
 final class NullSpecAnalysis extends CFAbstractAnalysis<CFValue, NullSpecStore, NullSpecTransfer> {
+  /*
+   * GenericAnnotatedTypeFactory runs one analysis after another for the methods, lambdas, and
+   * initializers of a class. It would be tempting to run independent method bodies on a fork-join
+   * pool, with one NullSpecAnalysis, NullSpecTransfer, and set of NullSpecStores per worker, and to
+   * merge the results into the factory's flow-result maps afterward. We don't, because the
+   * analyses are not actually independent in the ways that matter for thread safety:
+   *
+   * - The transfer function calls back into the type factory (getAnnotatedType, asSuper, capture
+   *   conversion, isNullExclusiveUnderEveryParameterization), and both "worlds" of the factory keep
+   *   unsynchronized caches (the CF tree and element caches, areEqualVisitHistory, and our own
+   *   caches in Util and NullSpecTransfer).
+   *
+   * - Those calls in turn complete javac symbols and create javac types, and javac's symbol table
+   *   and type caches are not thread-safe.
+   *
+   * - GenericAnnotatedTypeFactory itself records per-class state (the flow result, the class queue,
+   *   the "current" tree and path) in plain fields that the analysis of each method reads and
+   *   writes.
+   *
+   * Making all of that safe would mean either locking around nearly every factory call (at which
+   * point the workers would mostly wait on each other) or giving each worker its own factories,
+   * which are far more expensive to create than a method's analysis is to run (see the comment
+   * about creating the other "world" in NullSpecAnnotatedTypeFactory). So methods are analyzed
+   * sequentially. To speed up classes with many methods, we instead try to make each analysis
+   * cheaper (for example, by caching override lookups and map types).
+   */
+
+  private final Metrics metrics;
+  /** How many times the current analysis has run the transfer function, for {@link Metrics}. */
+  private long nodeVisits;
+
   NullSpecAnalysis(BaseTypeChecker checker, NullSpecAnnotatedTypeFactory factory) {
     super(checker, factory);
+    this.metrics = factory.metrics;
+  }
+
+  @Override
+  public void performAnalysis(ControlFlowGraph cfg, List<FieldInitialValue<CFValue>> fieldValues) {
+    nodeVisits = 0;
+    try {
+      super.performAnalysis(cfg, fieldValues);
+    } finally {
+      getTransferFunction().analysisFinished();
+      metrics.dataflowNodeVisitsPerAnalysis.record(nodeVisits);
+    }
+  }
+
+  @Override
+  protected TransferResult<CFValue, NullSpecStore> callTransferFunction(
+      Node node, TransferInput<CFValue, NullSpecStore> transferInput) {
+    nodeVisits++;
+    metrics.dataflowNodeVisits.increment();
+    return super.callTransferFunction(node, transferInput);
   }
 
   @Override
@@ -123,6 +123,10 @@ final class NullSpecAnnotatedTypeFactory
     extends GenericAnnotatedTypeFactory<
         CFValue, NullSpecStore, NullSpecTransfer, NullSpecAnalysis> {
   private final Util util;
+  /** Shared by both "worlds." Null unless the summarizeReturns option is set. */
+  private final ReturnNullnessSummaries returnNullnessSummaries;
+  /** Shared by both "worlds" and by their flow analyses. */
+  final Metrics metrics;
 
   private final AnnotationMirror minusNull;
   private final AnnotationMirror unionNull;
@@ -138,9 +142,27 @@ final class NullSpecAnnotatedTypeFactory
   final AnnotatedDeclaredType javaLangThreadLocal;
   final AnnotatedDeclaredType javaUtilMap;
 
+  /*
+   * The declared types of type parameters, which getUpperBounds looks up for every type-variable
+   * usage that it sees. Like CF's own type caches, this is bounded by -AatfCacheSize entries. Each
+   * world has its own, since the types depend on the world.
+   */
+  private final BoundedCache<Element, AnnotatedTypeMirror> typeParameterDeclarationCache =
+      new BoundedCache<>("type-parameter declarations", getCacheSize());
+
   /** Constructor that takes all configuration from the provided {@code checker}. */
-  NullSpecAnnotatedTypeFactory(BaseTypeChecker checker, Util util) {
-    this(checker, util, checker.hasOption("strict"), /* withOtherWorld= */ null);
+  NullSpecAnnotatedTypeFactory(
+      BaseTypeChecker checker,
+      Util util,
+      ReturnNullnessSummaries returnNullnessSummaries,
+      Metrics metrics) {
+    this(
+        checker,
+        util,
+        returnNullnessSummaries,
+        metrics,
+        checker.hasOption("strict"),
+        /* withOtherWorld= */ null);
   }
 
   /**
@@ -151,12 +173,22 @@ final class NullSpecAnnotatedTypeFactory
   private NullSpecAnnotatedTypeFactory(
       BaseTypeChecker checker,
       Util util,
+      ReturnNullnessSummaries returnNullnessSummaries,
+      Metrics metrics,
       boolean isLeastConvenientWorld,
       NullSpecAnnotatedTypeFactory withOtherWorld) {
-    // Only use flow-sensitive type refinement if implementation code should be checked
-    super(checker, checker.hasOption("checkImpl"));
+    /*
+     * Only use flow-sensitive type refinement if implementation code should be checked.
+     *
+     * TODO(cpovirk): In apiOnly mode, we'd like to avoid even creating the dataflow analysis. But
+     * GenericAnnotatedTypeFactory.postInit creates it unconditionally. At least with useFlow=false,
+     * it never builds a CFG or runs the analysis.
+     */
+    super(checker, checker.hasOption("checkImpl") && !checker.hasOption("apiOnly"));
 
     this.util = util;
+    this.returnNullnessSummaries = returnNullnessSummaries;
+    this.metrics = metrics;
 
     minusNull = util.minusNull;
     unionNull = util.unionNull;
@@ -192,7 +224,12 @@ final class NullSpecAnnotatedTypeFactory
     if (!givenOtherWorld) {
       withOtherWorld =
           new NullSpecAnnotatedTypeFactory(
-              checker, util, !isLeastConvenientWorld, /* withOtherWorld= */ this);
+              checker,
+              util,
+              returnNullnessSummaries,
+              metrics,
+              !isLeastConvenientWorld,
+              /* withOtherWorld= */ this);
     }
     if (isLeastConvenientWorld) {
       withLeastConvenientWorld = this;
@@ -349,6 +386,12 @@ final class NullSpecAnnotatedTypeFactory
       super(checker, qualifierHierarchy, ignoreRawTypeArguments, invariantArrays);
     }
 
+    @Override
+    public boolean isSubtype(AnnotatedTypeMirror subtype, AnnotatedTypeMirror supertype) {
+      metrics.subtypeQueries.increment();
+      return super.isSubtype(subtype, supertype);
+    }
+
     @Override
     protected StructuralEqualityComparer createEqualityComparer() {
       return new NullSpecEqualityComparer(areEqualVisitHistory);
@@ -495,6 +538,7 @@ final class NullSpecAnnotatedTypeFactory
   }
 
   boolean isNullExclusiveUnderEveryParameterization(AnnotatedTypeMirror type) {
+    metrics.nullExclusiveQueries.increment();
     return nullnessEstablishingPathExists(type, IS_DECLARED_OR_ARRAY);
   }
 
@@ -581,8 +625,11 @@ final class NullSpecAnnotatedTypeFactory
      */
     if (type instanceof AnnotatedTypeVariable
         && !isCapturedTypeVariable(type.getUnderlyingType())) {
-      AnnotatedTypeVariable variable = (AnnotatedTypeVariable) type;
-      type = getAnnotatedType(variable.getUnderlyingType().asElement());
+      Element typeParameter = ((AnnotatedTypeVariable) type).getUnderlyingType().asElement();
+      type =
+          shouldCache
+              ? typeParameterDeclarationCache.get(typeParameter, e -> getAnnotatedType(e))
+              : getAnnotatedType(typeParameter);
     }
 
     switch (type.getKind()) {
@@ -745,7 +792,7 @@ final class NullSpecAnnotatedTypeFactory
   @Override
   public NullSpecTransfer createFlowTransferFunction(
       CFAbstractAnalysis<CFValue, NullSpecStore, NullSpecTransfer> analysis) {
-    return new NullSpecTransfer(analysis, util);
+    return new NullSpecTransfer(analysis, util, returnNullnessSummaries);
   }
 
   @Override
@@ -1099,6 +1146,7 @@ final class NullSpecAnnotatedTypeFactory
         AnnotatedTypeMirror returnedStreamElementType =
             ((AnnotatedDeclaredType) type).getTypeArguments().get(0);
         returnedStreamElementType.replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       /*
@@ -1127,6 +1175,7 @@ final class NullSpecAnnotatedTypeFactory
        */
       if (nameMatches(method, "Arrays", "copyOf") || nameMatches(method, "Arrays", "copyOfRange")) {
         ((AnnotatedArrayType) type).getComponentType().replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       /*
@@ -1143,6 +1192,7 @@ final class NullSpecAnnotatedTypeFactory
         ((AnnotatedArrayType) type)
             .getComponentType()
             .replaceAnnotation(upperBoundOnArrayElementType);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       if (isGetCauseOnExecutionException(tree)) {
@@ -1172,6 +1222,7 @@ final class NullSpecAnnotatedTypeFactory
          * a nullable argument or call an overload that does not require a cause.
          */
         type.replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       if (isGetCauseOnInvocationTargetException(tree)) {
@@ -1183,6 +1234,7 @@ final class NullSpecAnnotatedTypeFactory
          * TODO(cpovirk): Still, consider being more conservative, as with ExecutionException.
          */
         type.replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       if (isGetEnumConstantsOnEnumClass(tree)) {
@@ -1195,10 +1247,12 @@ final class NullSpecAnnotatedTypeFactory
          * - getClass().getEnumConstants() from within the body of an enum-value "subclass"
          */
         type.replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       if (isGetOrDefaultWithNonnullMapValuesAndDefault(tree)) {
         type.replaceAnnotation(minusNull);
+        metrics.treeAnnotatorSpecialCase(method);
       }
 
       return super.visitMethodInvocation(tree, type);
@@ -1564,6 +1618,15 @@ final class NullSpecAnnotatedTypeFactory
   }
 
   private final class NullSpecAnnotatedTypeFormatter implements AnnotatedTypeFormatter {
+    /*
+     * We format types for every diagnostic that we print (and, with -Adetailedmsgtext, more than
+     * once per diagnostic), so we reuse a single visitor and its buffers rather than allocating new
+     * ones for each call. The visitor isn't reentrant, so in the unexpected case of a nested call,
+     * we fall back to a fresh visitor.
+     */
+    private final FormattingVisitor reusableVisitor = new FormattingVisitor();
+    private boolean reusableVisitorInUse;
+
     @Override
     public String format(AnnotatedTypeMirror type) {
       return format(type, /* printVerbose= */ false);
@@ -1571,117 +1634,83 @@ final class NullSpecAnnotatedTypeFactory
 
     @Override
     public String format(AnnotatedTypeMirror type, boolean printVerbose) {
-      StringBuilder result = new StringBuilder();
-      IdentityHashMap<AnnotatedTypeMirror, Present> visiting = new IdentityHashMap<>();
-      new AnnotatedTypeVisitor<Void, Void>() {
-        @Override
-        public Void visit(AnnotatedTypeMirror type) {
-          return visit(type, null);
-        }
-
-        @Override
-        public Void visit(AnnotatedTypeMirror type, Void aVoid) {
-          return type.accept(this, null);
-        }
+      if (reusableVisitorInUse) {
+        return new FormattingVisitor().format(type);
+      }
+      reusableVisitorInUse = true;
+      try {
+        return reusableVisitor.format(type);
+      } finally {
+        reusableVisitorInUse = false;
+      }
+    }
 
-        @Override
-        public Void visitDeclared(AnnotatedDeclaredType type, Void aVoid) {
-          append(simpleName(type));
-          if (!type.getTypeArguments().isEmpty()) {
-            append("<");
-            visitJoining(type.getTypeArguments(), ", ");
-            append(">");
-          }
-          append(operator(type));
-          return null;
-        }
+    private final class FormattingVisitor implements AnnotatedTypeVisitor<Void, Void> {
+      private final StringBuilder result = new StringBuilder();
+      private final IdentityHashMap<AnnotatedTypeMirror, Present> visiting =
+          new IdentityHashMap<>();
 
-        @Override
-        public Void visitIntersection(AnnotatedIntersectionType type, Void aVoid) {
-          return visitJoining(type.getBounds(), " & ");
-        }
+      String format(AnnotatedTypeMirror type) {
+        result.setLength(0);
+        visiting.clear();
+        visit(type);
+        return result.toString();
+      }
 
-        @Override
-        public Void visitUnion(AnnotatedUnionType type, Void aVoid) {
-          return visitJoining(type.getAlternatives(), " | ");
-        }
+      @Override
+      public Void visit(AnnotatedTypeMirror type) {
+        return visit(type, null);
+      }
 
-        @Override
-        public Void visitExecutable(AnnotatedExecutableType type, Void aVoid) {
-          visit(type.getReturnType());
-          append(" ");
-          append(type.getElement().getSimpleName());
-          append("(");
-          visitJoining(type.getParameterTypes(), ", ");
-          append(")");
-          return null;
-        }
+      @Override
+      public Void visit(AnnotatedTypeMirror type, Void aVoid) {
+        return type.accept(this, null);
+      }
 
-        @Override
-        public Void visitArray(AnnotatedArrayType type, Void aVoid) {
-          visit(type.getComponentType());
-          append("[]");
-          append(operator(type));
-          return null;
+      @Override
+      public Void visitDeclared(AnnotatedDeclaredType type, Void aVoid) {
+        append(simpleName(type));
+        if (!type.getTypeArguments().isEmpty()) {
+          append("<");
+          visitJoining(type.getTypeArguments(), ", ");
+          append(">");
         }
+        append(operator(type));
+        return null;
+      }
 
-        @Override
-        public Void visitTypeVariable(AnnotatedTypeVariable type, Void aVoid) {
-          if (isCapturedTypeVariable(type.getUnderlyingType())) {
-            Present currentlyVisiting = visiting.put(type, Present.INSTANCE);
-            if (currentlyVisiting == Present.INSTANCE) {
-              append("...");
-              return null;
-            }
-
-            String operator = operator(type);
-            if (!operator.isEmpty()) {
-              append("{");
-            }
-            // TODO(cpovirk): Do we ever need to put braces around just the `? extends Foo` part?
-            append(type.getUnderlyingType().toString().replaceFirst(" of [?].*", " of ?"));
-            if (hasUpperBound(type)) {
-              append(" extends ");
-              visit(type.getUpperBound());
-            }
-            if (hasLowerBound(type)) {
-              append(" super ");
-              visit(type.getLowerBound());
-            }
-            if (!operator.isEmpty()) {
-              append("}");
-            }
-            append(operator);
-
-            visiting.remove(type);
-          } else {
-            append(simpleName(type));
-            append(operator(type));
-          }
-          return null;
-        }
+      @Override
+      public Void visitIntersection(AnnotatedIntersectionType type, Void aVoid) {
+        return visitJoining(type.getBounds(), " & ");
+      }
 
-        @Override
-        public Void visitPrimitive(AnnotatedPrimitiveType type, Void aVoid) {
-          append(type.getPrimitiveKind().toString().toLowerCase(Locale.ROOT));
-          return null;
-        }
+      @Override
+      public Void visitUnion(AnnotatedUnionType type, Void aVoid) {
+        return visitJoining(type.getAlternatives(), " | ");
+      }
 
-        @Override
-        public Void visitNoType(AnnotatedNoType type, Void aVoid) {
-          append("void");
-          return null;
-        }
+      @Override
+      public Void visitExecutable(AnnotatedExecutableType type, Void aVoid) {
+        visit(type.getReturnType());
+        append(" ");
+        append(type.getElement().getSimpleName());
+        append("(");
+        visitJoining(type.getParameterTypes(), ", ");
+        append(")");
+        return null;
+      }
 
-        @Override
-        public Void visitNull(AnnotatedNullType type, Void aVoid) {
-          append("null");
-          append(operator(type));
-          return null;
-        }
+      @Override
+      public Void visitArray(AnnotatedArrayType type, Void aVoid) {
+        visit(type.getComponentType());
+        append("[]");
+        append(operator(type));
+        return null;
+      }
 
-        @Override
-        public Void visitWildcard(AnnotatedWildcardType type, Void aVoid) {
+      @Override
+      public Void visitTypeVariable(AnnotatedTypeVariable type, Void aVoid) {
+        if (isCapturedTypeVariable(type.getUnderlyingType())) {
           Present currentlyVisiting = visiting.put(type, Present.INSTANCE);
           if (currentlyVisiting == Present.INSTANCE) {
             append("...");
@@ -1692,108 +1721,160 @@ final class NullSpecAnnotatedTypeFactory
           if (!operator.isEmpty()) {
             append("{");
           }
-          append("?");
-          if (hasExtendsBound(type)) {
+          // TODO(cpovirk): Do we ever need to put braces around just the `? extends Foo` part?
+          append(type.getUnderlyingType().toString().replaceFirst(" of [?].*", " of ?"));
+          if (hasUpperBound(type)) {
             append(" extends ");
-            visit(type.getExtendsBound());
+            visit(type.getUpperBound());
           }
-          if (hasSuperBound(type)) {
+          if (hasLowerBound(type)) {
             append(" super ");
-            visit(type.getSuperBound());
+            visit(type.getLowerBound());
           }
           if (!operator.isEmpty()) {
             append("}");
           }
           append(operator);
+
           visiting.remove(type);
-          return null;
+        } else {
+          append(simpleName(type));
+          append(operator(type));
         }
+        return null;
+      }
 
-        boolean hasUpperBound(AnnotatedTypeVariable type) {
-          return !isUnboundedForExtendsOrUpper(type.getUpperBound());
-        }
+      @Override
+      public Void visitPrimitive(AnnotatedPrimitiveType type, Void aVoid) {
+        append(type.getPrimitiveKind().toString().toLowerCase(Locale.ROOT));
+        return null;
+      }
 
-        boolean hasExtendsBound(AnnotatedWildcardType type) {
-          return !isUnboundedForExtendsOrUpper(type.getExtendsBound());
-        }
+      @Override
+      public Void visitNoType(AnnotatedNoType type, Void aVoid) {
+        append("void");
+        return null;
+      }
 
-        boolean isUnboundedForExtendsOrUpper(AnnotatedTypeMirror bound) {
-          return bound instanceof AnnotatedDeclaredType
-              && ((AnnotatedDeclaredType) bound)
-                  .getUnderlyingType()
-                  .asElement()
-                  .getSimpleName()
-                  .contentEquals("Object")
-              // TODO(cpovirk): Look specifically for java.lang.Object.
-              && bound.hasAnnotation(unionNull);
-        }
+      @Override
+      public Void visitNull(AnnotatedNullType type, Void aVoid) {
+        append("null");
+        append(operator(type));
+        return null;
+      }
 
-        boolean hasLowerBound(AnnotatedTypeVariable type) {
-          return !isUnboundedForSuperOrLower(type.getLowerBound());
+      @Override
+      public Void visitWildcard(AnnotatedWildcardType type, Void aVoid) {
+        Present currentlyVisiting = visiting.put(type, Present.INSTANCE);
+        if (currentlyVisiting == Present.INSTANCE) {
+          append("...");
+          return null;
         }
 
-        boolean hasSuperBound(AnnotatedWildcardType type) {
-          return !isUnboundedForSuperOrLower(type.getSuperBound());
+        String operator = operator(type);
+        if (!operator.isEmpty()) {
+          append("{");
         }
-
-        boolean isUnboundedForSuperOrLower(AnnotatedTypeMirror bound) {
-          return bound instanceof AnnotatedNullType
-              && !bound.hasAnnotation(unionNull)
-              && !bound.hasAnnotation(nullnessOperatorUnspecified);
+        append("?");
+        if (hasExtendsBound(type)) {
+          append(" extends ");
+          visit(type.getExtendsBound());
+        }
+        if (hasSuperBound(type)) {
+          append(" super ");
+          visit(type.getSuperBound());
+        }
+        if (!operator.isEmpty()) {
+          append("}");
         }
+        append(operator);
+        visiting.remove(type);
+        return null;
+      }
+
+      boolean hasUpperBound(AnnotatedTypeVariable type) {
+        return !isUnboundedForExtendsOrUpper(type.getUpperBound());
+      }
+
+      boolean hasExtendsBound(AnnotatedWildcardType type) {
+        return !isUnboundedForExtendsOrUpper(type.getExtendsBound());
+      }
+
+      boolean isUnboundedForExtendsOrUpper(AnnotatedTypeMirror bound) {
+        return bound instanceof AnnotatedDeclaredType
+            && ((AnnotatedDeclaredType) bound)
+                .getUnderlyingType()
+                .asElement()
+                .getSimpleName()
+                .contentEquals("Object")
+            // TODO(cpovirk): Look specifically for java.lang.Object.
+            && bound.hasAnnotation(unionNull);
+      }
 
-        Void visitJoining(List<? extends AnnotatedTypeMirror> types, String separator) {
-          boolean first = true;
-          for (AnnotatedTypeMirror type : types) {
-            if (!first) {
-              append(separator);
-            }
-            first = false;
-            visit(type);
+      boolean hasLowerBound(AnnotatedTypeVariable type) {
+        return !isUnboundedForSuperOrLower(type.getLowerBound());
+      }
+
+      boolean hasSuperBound(AnnotatedWildcardType type) {
+        return !isUnboundedForSuperOrLower(type.getSuperBound());
+      }
+
+      boolean isUnboundedForSuperOrLower(AnnotatedTypeMirror bound) {
+        return bound instanceof AnnotatedNullType
+            && !bound.hasAnnotation(unionNull)
+            && !bound.hasAnnotation(nullnessOperatorUnspecified);
+      }
+
+      Void visitJoining(List<? extends AnnotatedTypeMirror> types, String separator) {
+        boolean first = true;
+        for (AnnotatedTypeMirror type : types) {
+          if (!first) {
+            append(separator);
           }
-          return null;
+          first = false;
+          visit(type);
         }
+        return null;
+      }
 
-        String operator(AnnotatedTypeMirror type) {
-          /*
-           * TODO(cpovirk): It would be nice to output "!!" for minusNull "when necessary." But I
-           * don't think we have enough information at this point to know whether it's necessary.
-           * And it's very rarely necessary (and only occasionally even *helpful*), so I wouldn't
-           * want to output it *all* the time.
-           *
-           * We could try outputting it *except* in the case that T is null-exclusive: In that case,
-           * it would be confusing for us to sometimes output `T` and sometimes output `T!!` when
-           * the two are equivalent. (See a comment about this in areEqual: "One is `T`, and the
-           * other is `@MinusNull T`....")
-           *
-           * But even that adds noise that we'd probably prefer not to add. And Kotlin gets by
-           * without it: At least in my tests, I didn't see `T!!` in Kotlin error messages.
-           */
-          return type.hasAnnotation(unionNull)
-              ? "?"
-              : type.hasAnnotation(nullnessOperatorUnspecified) ? "*" : "";
-        }
+      String operator(AnnotatedTypeMirror type) {
+        /*
+         * TODO(cpovirk): It would be nice to output "!!" for minusNull "when necessary." But I
+         * don't think we have enough information at this point to know whether it's necessary.
+         * And it's very rarely necessary (and only occasionally even *helpful*), so I wouldn't
+         * want to output it *all* the time.
+         *
+         * We could try outputting it *except* in the case that T is null-exclusive: In that case,
+         * it would be confusing for us to sometimes output `T` and sometimes output `T!!` when
+         * the two are equivalent. (See a comment about this in areEqual: "One is `T`, and the
+         * other is `@MinusNull T`....")
+         *
+         * But even that adds noise that we'd probably prefer not to add. And Kotlin gets by
+         * without it: At least in my tests, I didn't see `T!!` in Kotlin error messages.
+         */
+        return type.hasAnnotation(unionNull)
+            ? "?"
+            : type.hasAnnotation(nullnessOperatorUnspecified) ? "*" : "";
+      }
 
-        Name simpleName(AnnotatedDeclaredType type) {
-          return type.getUnderlyingType().asElement().getSimpleName();
-        }
+      Name simpleName(AnnotatedDeclaredType type) {
+        return type.getUnderlyingType().asElement().getSimpleName();
+      }
 
-        Name simpleName(AnnotatedTypeVariable type) {
-          return type.getUnderlyingType().asElement().getSimpleName();
-        }
+      Name simpleName(AnnotatedTypeVariable type) {
+        return type.getUnderlyingType().asElement().getSimpleName();
+      }
 
-        void append(Object o) {
-          result.append(o);
-        }
-      }.visit(type);
-      return result.toString();
+      void append(Object o) {
+        result.append(o);
+      }
     }
   }
 
   @Override
   public void preProcessClassTree(ClassTree tree) {
     // For discussion of short-circuiting, see NullSpecVisitor.processClassTree.
-    if (util.hasSuppressWarningsNullness(tree.getModifiers().getAnnotations())) {
+    if (util.isSuppressed(root, tree)) {
       return;
     }
 
@@ -1904,6 +1985,50 @@ final class NullSpecAnnotatedTypeFactory
     return type;
   }
 
+  /**
+   * Drops the state that both worlds build up while checking a class but that later classes don't
+   * need. {@code setRoot(null)} already clears CF's tree caches and flow results, though CF itself
+   * calls it only when the next class comes from a different file, and it never calls it for the
+   * world that the visitor doesn't use. CF never clears the visit histories of a type hierarchy
+   * (including the {@code areEqualVisitHistory} that our {@link NullSpecEqualityComparer} uses), so
+   * we replace the hierarchy. The flow analysis holds onto the hierarchy, so we replace it, too.
+   *
+   * <p>Caches keyed by elements, like {@link #typeParameterDeclarationCache} and CF's own element
+   * cache, are valid for the whole compilation, so we keep them.
+   */
+  void releasePerClassState() {
+    for (NullSpecAnnotatedTypeFactory world :
+        asList(withLeastConvenientWorld, withMostConvenientWorld)) {
+      world.setRoot(null);
+      world.typeHierarchy = world.createTypeHierarchy();
+      world.analysis = world.createFlowAnalysis();
+      world.transfer = world.analysis.getTransferFunction();
+    }
+  }
+
+  /**
+   * Appends, for both worlds, the counters of the caches that this class maintains and the sizes
+   * of CF's tree caches. (CF clears its tree caches for each compilation unit and doesn't count
+   * hits, so the sizes are only a snapshot.)
+   */
+  void appendCacheStats(StringBuilder out) {
+    for (NullSpecAnnotatedTypeFactory world :
+        asList(withLeastConvenientWorld, withMostConvenientWorld)) {
+      String prefix =
+          world.isLeastConvenientWorld ? "least convenient world: " : "most convenient world: ";
+      world.typeParameterDeclarationCache.appendStats(out, prefix);
+      out.append(
+          String.format(
+              "%sCF tree caches: %,d expression, %,d member, %,d type-tree entries"
+                  + " (max %,d each)%n",
+              prefix,
+              world.fromExpressionTreeCache.size(),
+              world.fromMemberTreeCache.size(),
+              world.fromTypeTreeCache.size(),
+              world.getCacheSize()));
+    }
+  }
+
   private AnnotatedDeclaredType createType(TypeElement element) {
     return (AnnotatedDeclaredType)
         AnnotatedTypeMirror.createType(element.asType(), this, /* isDeclaration= */ false);
@@ -15,20 +15,33 @@
 package com.google.jspecify.nullness;
 
 import static com.sun.source.util.TaskEvent.Kind.COMPILATION;
+import static com.sun.source.util.TaskEvent.Kind.ENTER;
 import static javax.tools.Diagnostic.Kind.NOTE;
 
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.util.JavacTask;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskListener;
 import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.util.Log;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileManager;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
+import org.checkerframework.framework.source.DiagMessage;
 import org.checkerframework.framework.source.SupportedOptions;
+import org.checkerframework.javacutil.UserError;
 
 /**
  * Main entry point for a jspecify nullness checker.
@@ -39,9 +52,43 @@ import org.checkerframework.framework.source.SupportedOptions;
  *   <li>"strict": Whether the checker should be a sound, strict type system. Does not imply that
  *       implementation code is checked.
  *   <li>"checkImpl": Whether implementation code should be checked.
+ *   <li>"apiOnly": Whether to check only signatures: declared types of methods and fields,
+ *       overrides, and type-parameter bounds. Method bodies, initializer blocks, and field
+ *       initializers are skipped, and dataflow analysis is disabled. Overrides "checkImpl."
+ *   <li>"summarizeReturns": Whether calls to private, static, and final methods declared in the
+ *       same file should use what the methods' bodies show about whether they can return null.
+ *       Has an effect only with "checkImpl."
+ *   <li>"diagnosticsOut": A file to write each reported diagnostic to, as one JSON object per line.
+ *       See {@link DiagnosticsJsonWriter}.
+ *   <li>"skipGenerated": Whether to skip checking classes that are annotated with {@code
+ *       Generated} or that an annotation processor wrote.
+ *   <li>"skipPackages": A comma-separated list of packages (including their subpackages) whose
+ *       classes shouldn't be checked.
+ *   <li>"cacheStats": Whether to print, at the end of compilation, how well the type caches
+ *       worked. Their maximum size is CF's "atfCacheSize" option.
+ *   <li>"sarifOut": A file to write the reported diagnostics to, in SARIF format. See {@link
+ *       SarifWriter}, which can also merge such files.
+ *   <li>"metrics": Whether to print, at the end of compilation, counts of the work that the
+ *       checker did, like subtype queries, dataflow node visits, and diagnostics by message key.
+ *       See {@link Metrics}.
+ *   <li>"metricsJson": A file to write those counts to, as JSON. See {@link MetricsExporter}.
+ *   <li>"metricsPrometheus": A file to write those counts to, in the Prometheus text format.
  * </ol>
  */
-@SupportedOptions({"strict", "checkImpl"})
+@SupportedOptions({
+  "strict",
+  "checkImpl",
+  "apiOnly",
+  "summarizeReturns",
+  "skipGenerated",
+  "skipPackages",
+  "cacheStats",
+  "diagnosticsOut",
+  "sarifOut",
+  "metrics",
+  "metricsJson",
+  "metricsPrometheus"
+})
 public final class NullSpecChecker extends BaseTypeChecker {
   /*
    * A non-final field is ugly, but we can't create our Util instance in the constructor because the
@@ -57,8 +104,28 @@ public final class NullSpecChecker extends BaseTypeChecker {
    */
   Util util;
 
+  /** Non-null if the summarizeReturns option is set. Initialized alongside {@link #util}. */
+  ReturnNullnessSummaries returnNullnessSummaries;
+
+  /** {@link Metrics#DISABLED} unless a metrics option is set. Set alongside {@link #util}. */
+  Metrics metrics = Metrics.DISABLED;
+
   boolean reportedNullnessError;
 
+  /** Non-null if the skipGenerated or skipPackages option is set. */
+  private ClassSkipper classSkipper;
+
+  /** How many top-level classes typeProcess checked, and how long that took in total. */
+  private int checkedClasses;
+
+  private long checkingNanos;
+
+  /** The outputs requested by the diagnosticsOut and sarifOut options. */
+  private final List<DiagnosticSink> diagnosticSinks = new ArrayList<>();
+
+  /** The outputs requested by the metrics, metricsJson, and metricsPrometheus options. */
+  private final List<MetricsExporter> metricsExporters = new ArrayList<>();
+
   public NullSpecChecker() {}
 
   @Override
@@ -72,11 +139,58 @@ public final class NullSpecChecker extends BaseTypeChecker {
   public void initChecker() {
     super.initChecker();
 
+    if (hasOption("skipGenerated") || getOption("skipPackages") != null) {
+      classSkipper =
+          new ClassSkipper(
+              getElementUtils(),
+              ((JavacProcessingEnvironment) processingEnv).getContext().get(JavaFileManager.class),
+              hasOption("skipGenerated"),
+              getOption("skipPackages"));
+    }
+
+    String diagnosticsOut = getOption("diagnosticsOut");
+    String sarifOut = getOption("sarifOut");
+    try {
+      if (diagnosticsOut != null) {
+        diagnosticSinks.add(new DiagnosticsJsonWriter(Paths.get(diagnosticsOut)));
+      }
+      if (sarifOut != null) {
+        diagnosticSinks.add(new SarifWriter(Paths.get(sarifOut), getMessagesProperties()));
+      }
+    } catch (IOException e) {
+      throw new UserError("Cannot open diagnostics output file: %s", e);
+    }
+
+    if (hasOption("metrics")) {
+      metricsExporters.add(new MetricsExporter.TextSummary(processingEnv.getMessager()));
+    }
+    String metricsJson = getOption("metricsJson");
+    if (metricsJson != null) {
+      metricsExporters.add(new MetricsExporter.JsonFile(Paths.get(metricsJson)));
+    }
+    String metricsPrometheus = getOption("metricsPrometheus");
+    if (metricsPrometheus != null) {
+      metricsExporters.add(new MetricsExporter.PrometheusFile(Paths.get(metricsPrometheus)));
+    }
+
     JavacTask.instance(processingEnv)
         .addTaskListener(
             new TaskListener() {
+              @Override
+              public void started(TaskEvent event) {
+                if (util != null && event.getKind() == ENTER) {
+                  util.clearSourceDependentOverrides();
+                }
+              }
+
               @Override
               public void finished(TaskEvent event) {
+                if (event.getKind() == COMPILATION) {
+                  closeDiagnosticSinks();
+                  printSkippedClassesSummary();
+                  printCacheStats();
+                  exportMetrics();
+                }
                 if (reportedNullnessError && event.getKind() == COMPILATION) {
                   processingEnv
                       .getMessager()
@@ -95,15 +209,224 @@ public final class NullSpecChecker extends BaseTypeChecker {
 
   @Override
   protected BaseTypeVisitor<?> createSourceVisitor() {
-    this.util = new Util(getElementUtils(), getTypeUtils()); // see discussion on the field
+    // see discussion on the field
+    this.util =
+        new Util(
+            getElementUtils(),
+            getTypeUtils(),
+            Trees.instance(processingEnv),
+            getSuppressWarningsPrefixes());
+    if (hasOption("summarizeReturns")) {
+      this.returnNullnessSummaries = new ReturnNullnessSummaries(Trees.instance(processingEnv));
+    }
+    if (hasOption("metrics")
+        || getOption("metricsJson") != null
+        || getOption("metricsPrometheus") != null) {
+      this.metrics = new Metrics();
+    }
     return new NullSpecVisitor(this, util);
   }
 
   @Override
   public void typeProcess(TypeElement element, TreePath path) {
+    if (classSkipper != null && classSkipper.skip(element, path) != null) {
+      return;
+    }
     Log log = Log.instance(((JavacProcessingEnvironment) processingEnv).getContext());
     int errorsBefore = log.nerrors;
-    super.typeProcess(element, path);
+    long start = System.nanoTime();
+    try {
+      super.typeProcess(element, path);
+    } finally {
+      releasePerClassState();
+    }
+    long elapsed = System.nanoTime() - start;
+    checkingNanos += elapsed;
+    metrics.classCheckingNanos.record(elapsed);
+    checkedClasses++;
     reportedNullnessError |= (log.nerrors > errorsBefore);
   }
+
+  /**
+   * Drops the per-tree types, flow results, and other state that we built up while checking the
+   * class that typeProcess just checked, keeping only what's valid for every class (like types of
+   * elements). Otherwise, CF would hold onto it until the next class from a different file, and
+   * some of it (like the visit histories of the type hierarchies) for the whole compilation.
+   */
+  private void releasePerClassState() {
+    if (!(visitor instanceof NullSpecVisitor)) {
+      return;
+    }
+    /*
+     * This also clears currentRoot, so CF calls setRoot again even if the next class comes from the
+     * same file. That costs a little for files with multiple top-level classes, but those are rare.
+     */
+    setRoot(null);
+    ((NullSpecVisitor) visitor).getTypeFactory().releasePerClassState();
+    util.clearSuppressionIndex();
+    util.clearSourceDependentOverrides();
+    if (returnNullnessSummaries != null) {
+      returnNullnessSummaries.clear();
+    }
+  }
+
+  private void exportMetrics() {
+    try {
+      for (MetricsExporter exporter : metricsExporters) {
+        exporter.export(metrics);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void printCacheStats() {
+    if (!hasOption("cacheStats") || !(visitor instanceof NullSpecVisitor)) {
+      return;
+    }
+    StringBuilder stats = new StringBuilder("Nullness checker cache statistics:\n");
+    ((NullSpecVisitor) visitor).getTypeFactory().appendCacheStats(stats);
+    processingEnv.getMessager().printMessage(NOTE, stats);
+  }
+
+  private void printSkippedClassesSummary() {
+    if (classSkipper == null) {
+      return;
+    }
+    int skipped = classSkipper.skippedGenerated() + classSkipper.skippedPackage();
+    if (skipped == 0) {
+      return;
+    }
+    /*
+     * We can't know how long the skipped classes would have taken, so we assume that they'd have
+     * taken as long as the average class that we did check.
+     */
+    double averageMillis = checkedClasses == 0 ? 0 : checkingNanos / 1e6 / checkedClasses;
+    processingEnv
+        .getMessager()
+        .printMessage(
+            NOTE,
+            String.format(
+                "Skipped nullness checking of %d classes (%d generated, %d in skipped packages)."
+                    + " Estimated time saved: %.0f ms (%d classes checked, averaging %.1f ms each)",
+                skipped,
+                classSkipper.skippedGenerated(),
+                classSkipper.skippedPackage(),
+                averageMillis * skipped,
+                checkedClasses,
+                averageMillis));
+  }
+
+  @Override
+  public void reportError(Object source, String messageKey, Object... args) {
+    startReporting(messageKey, args);
+    try {
+      super.reportError(source, messageKey, args);
+    } finally {
+      finishReporting();
+    }
+  }
+
+  @Override
+  public void reportWarning(Object source, String messageKey, Object... args) {
+    startReporting(messageKey, args);
+    try {
+      super.reportWarning(source, messageKey, args);
+    } finally {
+      finishReporting();
+    }
+  }
+
+  @Override
+  public void report(Object source, DiagMessage d) {
+    startReporting(d.getMessageKey(), d.getArgs());
+    try {
+      super.report(source, d);
+    } finally {
+      finishReporting();
+    }
+  }
+
+  /*
+   * The message key and arguments of the diagnostic that SourceChecker is reporting, so that
+   * printOrStoreMessage can record them alongside the message that SourceChecker prints. Null when
+   * SourceChecker prints something else.
+   */
+  private String reportingMessageKey;
+  private Object[] reportingArgs;
+
+  private void startReporting(String messageKey, Object[] args) {
+    reportingMessageKey = messageKey;
+    reportingArgs = args;
+  }
+
+  private void finishReporting() {
+    reportingMessageKey = null;
+    reportingArgs = null;
+  }
+
+  /**
+   * Prints a diagnostic, and passes it to the machine-readable outputs and counts it in the
+   * metrics, if any of those are enabled.
+   *
+   * <p>SourceChecker calls this only for diagnostics that it hasn't suppressed, with the kind
+   * (after {@code -Awarns}) and the full message text that it prints, so the outputs agree with
+   * the compiler's own output. Diagnostics that SourceChecker reports on an {@link
+   * javax.lang.model.element.Element} go straight to the {@link
+   * javax.annotation.processing.Messager} instead, so they aren't recorded. This checker reports
+   * its own diagnostics on trees.
+   */
+  @Override
+  protected void printOrStoreMessage(
+      Diagnostic.Kind kind, String message, Tree source, CompilationUnitTree root) {
+    super.printOrStoreMessage(kind, message, source, root);
+    if (reportingMessageKey == null || (diagnosticSinks.isEmpty() && !metrics.enabled())) {
+      return;
+    }
+    metrics.diagnostic(reportingMessageKey);
+    if (diagnosticSinks.isEmpty()) {
+      return;
+    }
+
+    long start = -1;
+    long end = -1;
+    long line = -1;
+    long column = -1;
+    String file = null;
+    if (source != null && root != null) {
+      file = root.getSourceFile().getName();
+      start = trees.getSourcePositions().getStartPosition(root, source);
+      end = trees.getSourcePositions().getEndPosition(root, source);
+      if (start >= 0) {
+        line = root.getLineMap().getLineNumber(start);
+        column = root.getLineMap().getColumnNumber(start);
+      }
+    }
+
+    CheckerDiagnostic diagnostic =
+        new CheckerDiagnostic(
+            kind, file, start, end, line, column, reportingMessageKey, message, reportingArgs);
+    for (DiagnosticSink sink : diagnosticSinks) {
+      sink.write(diagnostic);
+    }
+  }
+
+  private void closeDiagnosticSinks() {
+    IOException failure = null;
+    for (DiagnosticSink sink : diagnosticSinks) {
+      try {
+        sink.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    diagnosticSinks.clear();
+    if (failure != null) {
+      throw new UncheckedIOException(failure);
+    }
+  }
 }
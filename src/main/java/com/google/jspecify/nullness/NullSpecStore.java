@@ -14,17 +14,48 @@
 
 package com.google.jspecify.nullness;
 
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
+import static org.checkerframework.dataflow.expression.JavaExpression.fromNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.lang.model.element.VariableElement;
+import org.checkerframework.dataflow.cfg.node.MethodInvocationNode;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.expression.ArrayAccess;
+import org.checkerframework.dataflow.expression.FieldAccess;
 import org.checkerframework.dataflow.expression.JavaExpression;
+import org.checkerframework.dataflow.expression.JavaExpressionScanner;
+import org.checkerframework.dataflow.expression.LocalVariable;
 import org.checkerframework.framework.flow.CFAbstractStore;
 import org.checkerframework.framework.flow.CFValue;
+import org.checkerframework.framework.type.AnnotatedTypeFactory;
 
 final class NullSpecStore extends CFAbstractStore<CFValue, NullSpecStore> {
+  /*
+   * "@KeyFor Lite": For each map expression, the key expressions that we know to be present in the
+   * map, thanks to an earlier containsKey or put call. NullSpecTransfer uses this to treat
+   * `map.get(key)` and `map.remove(key)` as returning the map's value type, rather than its
+   * nullable version.
+   *
+   * The key sets are never modified after they're put into the map. Instead, we replace them. That
+   * way, copying a store (which dataflow does constantly) copies only the outer map.
+   */
+  private final Map<JavaExpression, Set<JavaExpression>> mapKeys;
+
   NullSpecStore(NullSpecAnalysis analysis, boolean sequentialSemantics) {
     super(analysis, sequentialSemantics);
+    mapKeys = new HashMap<>();
   }
 
   NullSpecStore(NullSpecStore other) {
     super(other);
+    mapKeys = new HashMap<>(other.mapKeys);
   }
 
   @Override
@@ -32,4 +63,170 @@ final class NullSpecStore extends CFAbstractStore<CFValue, NullSpecStore> {
       JavaExpression expr, CFValue value, boolean permitNondeterministic) {
     return super.shouldInsert(expr, value, /* permitNondeterministic= */ true);
   }
+
+  /** Returns whether {@code key} is known to be a key in {@code map}. */
+  boolean isKnownMapKey(JavaExpression map, JavaExpression key) {
+    return mapKeys.getOrDefault(map, emptySet()).contains(key);
+  }
+
+  /**
+   * Records that {@code key} is a key in {@code map}, and returns whether this is new information.
+   */
+  boolean addMapKey(JavaExpression map, JavaExpression key) {
+    if (map.containsUnknown() || key.containsUnknown()) {
+      return false;
+    }
+    Set<JavaExpression> keys = mapKeys.getOrDefault(map, emptySet());
+    if (keys.contains(key)) {
+      return false;
+    }
+    Set<JavaExpression> newKeys = new HashSet<>(keys);
+    newKeys.add(key);
+    mapKeys.put(map, unmodifiableSet(newKeys));
+    return true;
+  }
+
+  /** Forgets that {@code key} is a key in {@code map}, and returns whether the store changed. */
+  boolean removeMapKey(JavaExpression map, JavaExpression key) {
+    Set<JavaExpression> keys = mapKeys.get(map);
+    if (keys == null || !keys.contains(key)) {
+      return false;
+    }
+    if (keys.size() == 1) {
+      mapKeys.remove(map);
+    } else {
+      Set<JavaExpression> newKeys = new HashSet<>(keys);
+      newKeys.remove(key);
+      mapKeys.put(map, unmodifiableSet(newKeys));
+    }
+    return true;
+  }
+
+  /** Forgets all keys of {@code map}, and returns whether the store changed. */
+  boolean removeAllMapKeys(JavaExpression map) {
+    return mapKeys.remove(map) != null;
+  }
+
+  @Override
+  public void updateForMethodCall(
+      MethodInvocationNode n, AnnotatedTypeFactory atypeFactory, CFValue val) {
+    super.updateForMethodCall(n, atypeFactory, val);
+    if (!isSideEffectFree(atypeFactory, n.getTarget().getMethod())) {
+      // The method might remove entries from any map that it can reach.
+      mapKeys.clear();
+    }
+  }
+
+  @Override
+  public void updateForAssignment(Node n, CFValue val) {
+    super.updateForAssignment(n, val);
+    JavaExpression target = fromNode(n);
+    if (target instanceof LocalVariable) {
+      removeMapKeysIf(e -> e.containsSyntacticEqualJavaExpression(target));
+    } else if (target instanceof FieldAccess) {
+      // The field may be accessed through a different receiver that refers to the same object.
+      VariableElement field = ((FieldAccess) target).getField();
+      removeMapKeysIf(e -> mentionsField(e, field));
+    } else if (target instanceof ArrayAccess) {
+      removeMapKeysIf(e -> e.containsOfClass(ArrayAccess.class));
+    } else {
+      mapKeys.clear();
+    }
+  }
+
+  private void removeMapKeysIf(Predicate<JavaExpression> affected) {
+    for (Iterator<Map.Entry<JavaExpression, Set<JavaExpression>>> i =
+            mapKeys.entrySet().iterator();
+        i.hasNext(); ) {
+      Map.Entry<JavaExpression, Set<JavaExpression>> entry = i.next();
+      if (affected.test(entry.getKey())) {
+        i.remove();
+        continue;
+      }
+      Set<JavaExpression> keys = entry.getValue();
+      if (keys.stream().anyMatch(affected)) {
+        Set<JavaExpression> newKeys = new HashSet<>(keys);
+        newKeys.removeIf(affected);
+        if (newKeys.isEmpty()) {
+          i.remove();
+        } else {
+          entry.setValue(unmodifiableSet(newKeys));
+        }
+      }
+    }
+  }
+
+  private static boolean mentionsField(JavaExpression expression, VariableElement field) {
+    boolean[] result = new boolean[1];
+    new JavaExpressionScanner<Void>() {
+      @Override
+      protected Void visitFieldAccess(FieldAccess fieldAccess, Void unused) {
+        result[0] |= fieldAccess.getField().equals(field);
+        return super.visitFieldAccess(fieldAccess, unused);
+      }
+    }.scan(expression, null);
+    return result[0];
+  }
+
+  @Override
+  public NullSpecStore leastUpperBound(NullSpecStore other) {
+    NullSpecStore result = super.leastUpperBound(other);
+    intersectMapKeys(result, other);
+    return result;
+  }
+
+  @Override
+  public NullSpecStore widenedUpperBound(NullSpecStore previous) {
+    NullSpecStore result = super.widenedUpperBound(previous);
+    intersectMapKeys(result, previous);
+    return result;
+  }
+
+  /** Sets the map keys of {@code result} to those known in both this store and {@code other}. */
+  private void intersectMapKeys(NullSpecStore result, NullSpecStore other) {
+    result.mapKeys.clear();
+    // Iterate over the smaller map. Since key sets are immutable, identical ones can be shared.
+    NullSpecStore smaller = mapKeys.size() <= other.mapKeys.size() ? this : other;
+    NullSpecStore larger = smaller == this ? other : this;
+    smaller.mapKeys.forEach(
+        (map, keys) -> {
+          Set<JavaExpression> otherKeys = larger.mapKeys.get(map);
+          if (otherKeys == null) {
+            return;
+          }
+          if (otherKeys == keys || otherKeys.equals(keys)) {
+            result.mapKeys.put(map, keys);
+            return;
+          }
+          Set<JavaExpression> commonKeys = new HashSet<>(keys);
+          commonKeys.retainAll(otherKeys);
+          if (!commonKeys.isEmpty()) {
+            result.mapKeys.put(map, unmodifiableSet(commonKeys));
+          }
+        });
+  }
+
+  @Override
+  protected boolean supersetOf(CFAbstractStore<CFValue, NullSpecStore> other) {
+    if (!super.supersetOf(other)) {
+      return false;
+    }
+    for (Map.Entry<JavaExpression, Set<JavaExpression>> entry :
+        ((NullSpecStore) other).mapKeys.entrySet()) {
+      if (!mapKeys.getOrDefault(entry.getKey(), emptySet()).containsAll(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + mapKeys.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return mapKeys.isEmpty() ? super.toString() : super.toString() + "\nmap keys: " + mapKeys;
+  }
 }
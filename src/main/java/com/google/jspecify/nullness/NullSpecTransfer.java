@@ -20,7 +20,6 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.unmodifiableSet;
-import static java.util.stream.Collectors.toList;
 import static org.checkerframework.dataflow.expression.JavaExpression.fromNode;
 import static org.checkerframework.framework.flow.CFAbstractStore.canInsertJavaExpression;
 import static org.checkerframework.framework.type.AnnotatedTypeMirror.createType;
@@ -31,6 +30,7 @@ import static org.checkerframework.javacutil.TreeUtils.elementFromTree;
 import static org.checkerframework.javacutil.TreeUtils.elementFromUse;
 import static org.checkerframework.javacutil.TreeUtils.typeOf;
 
+import com.google.jspecify.nullness.ReturnNullnessSummaries.Summary;
 import com.sun.source.tree.EnhancedForLoopTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.MemberSelectTree;
@@ -38,8 +38,10 @@ import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
@@ -74,15 +76,19 @@ import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclared
 
 final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore, NullSpecTransfer> {
   private final Util util;
+  private final ReturnNullnessSummaries returnNullnessSummaries;
   private final NullSpecAnnotatedTypeFactory atypeFactory;
   private final AnnotationMirror minusNull;
   private final AnnotationMirror nullnessOperatorUnspecified;
   private final AnnotationMirror unionNull;
 
   NullSpecTransfer(
-      CFAbstractAnalysis<CFValue, NullSpecStore, NullSpecTransfer> analysis, Util util) {
+      CFAbstractAnalysis<CFValue, NullSpecStore, NullSpecTransfer> analysis,
+      Util util,
+      ReturnNullnessSummaries returnNullnessSummaries) {
     super(analysis);
     this.util = util;
+    this.returnNullnessSummaries = returnNullnessSummaries;
     atypeFactory = (NullSpecAnnotatedTypeFactory) analysis.getTypeFactory();
 
     minusNull = util.minusNull;
@@ -149,13 +155,23 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
   @Override
   public TransferResult<CFValue, NullSpecStore> visitMethodInvocation(
       MethodInvocationNode node, TransferInput<CFValue, NullSpecStore> input) {
+    ExecutableElement method = node.getTarget().getMethod();
+    // Check before super.visitMethodInvocation, which may invalidate map keys.
+    boolean isMapGetOrRemoveOfKnownKey =
+        (isOrOverrides(method, util.mapGetElement) || isOrOverrides(method, util.mapRemoveElement))
+            && isKnownMapKey(node, input.getRegularStore());
     TransferResult<CFValue, NullSpecStore> result = super.visitMethodInvocation(node, input);
     NullSpecStore thenStore = input.getThenStore();
     NullSpecStore elseStore = input.getElseStore();
-    ExecutableElement method = node.getTarget().getMethod();
 
     boolean storeChanged = false;
 
+    if (returnNullnessSummaries != null) {
+      refineResultFromReturnNullnessSummary(node, input, result);
+    }
+    // Read after the summary refinement, which has its own counter, so that it isn't counted below.
+    CFValue unrefinedResultValue = result.getResultValue();
+
     if (nameMatches(method, "Objects", "requireNonNull")
         || nameMatches(method, "Preconditions", "checkNotNull")
         || nameMatches(method, "Verify", "verifyNotNull")) {
@@ -363,13 +379,32 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
       refineMapGetResultIfKeySetLoop(node, result);
     }
 
+    if (isMapGetOrRemoveOfKnownKey) {
+      refineMapGetOrRemoveResultForKnownKey(node, result);
+    }
+
     if (isOrOverrides(method, util.mapContainsKeyElement)) {
-      storeChanged |= refineFutureMapGetFromMapContainsKeyOrPut(node, thenStore);
+      storeChanged |= recordMapKey(node, thenStore);
     }
 
     if (isOrOverrides(method, util.mapPutElement)) {
-      storeChanged |= refineFutureMapGetFromMapContainsKeyOrPut(node, thenStore);
-      storeChanged |= refineFutureMapGetFromMapContainsKeyOrPut(node, elseStore);
+      storeChanged |= recordMapKey(node, thenStore);
+      storeChanged |= recordMapKey(node, elseStore);
+    }
+
+    if (isOrOverrides(method, util.mapRemoveElement)
+        || isOrOverrides(method, util.mapRemoveTwoArgElement)
+        || isOrOverrides(method, util.mapComputeElement)
+        || isOrOverrides(method, util.mapComputeIfPresentElement)
+        || isOrOverrides(method, util.mapMergeElement)) {
+      // Each of these methods may remove the entry for its key.
+      storeChanged |= forgetMapKey(node, thenStore);
+      storeChanged |= forgetMapKey(node, elseStore);
+    }
+
+    if (isOrOverrides(method, util.mapClearElement)) {
+      storeChanged |= forgetAllMapKeys(node, thenStore);
+      storeChanged |= forgetAllMapKeys(node, elseStore);
     }
 
     if (isOrOverrides(method, util.annotatedElementIsAnnotationPresentElement)) {
@@ -385,10 +420,36 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
       storeChanged |= refineFutureGetComponentTypeFromIsArray(node, thenStore);
     }
 
+    // The special cases above replace the result value rather than modifying it.
+    if (storeChanged || result.getResultValue() != unrefinedResultValue) {
+      atypeFactory.metrics.transferSpecialCase(method);
+    }
+
     return new ConditionalTransferResult<>(
         result.getResultValue(), thenStore, elseStore, storeChanged);
   }
 
+  private void refineResultFromReturnNullnessSummary(
+      MethodInvocationNode node,
+      TransferInput<CFValue, NullSpecStore> input,
+      TransferResult<CFValue, NullSpecStore> result) {
+    Summary summary =
+        returnNullnessSummaries.summaryFor(
+            node.getTarget().getMethod(), node.getTreePath().getCompilationUnit());
+    if (!summary.isKnown()) {
+      return;
+    }
+    NullSpecAnnotatedTypeFactory leastConvenientWorld = atypeFactory.withLeastConvenientWorld();
+    for (int index : summary.nonNullIfArgumentsNonNull) {
+      AnnotatedTypeMirror type = typeWithTopLevelAnnotationsOnly(input, node.getArgument(index));
+      if (!leastConvenientWorld.isNullExclusiveUnderEveryParameterization(type)) {
+        return;
+      }
+    }
+    setResultValueToNonNull(result);
+    atypeFactory.metrics.returnSummaryRefinements.increment();
+  }
+
   private boolean overwriteGetterFromSetter(
       MethodInvocationNode setterNode,
       ExecutableElement getter,
@@ -451,12 +512,11 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
 
   private boolean refineFutureGetAnnotationFromIsAnnotationPresent(
       MethodInvocationNode isAnnotationPresentNode, NullSpecStore thenStore) {
-    // TODO(cpovirk): Reduce duplication between this and refineFutureMapGetFromMapContainsKey.
     Tree isAnnotationPresentReceiver = isAnnotationPresentNode.getTarget().getReceiver().getTree();
     if (isAnnotationPresentReceiver == null) {
       /*
-       * See discussion in refineFutureMapGetFromMapContainsKey below. Note that this case should be
-       * even rarer than that method's containsKeyReceiver case (an already rare case), since so few
+       * See discussion in refineMapGetOrRemoveResultForKnownKey below. Note that this case should
+       * be even rarer than that method's mapReceiver case (an already rare case), since so few
        * classes implement AnnotatedElement.
        */
       return false;
@@ -512,74 +572,75 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
     }
   }
 
-  private boolean refineFutureMapGetFromMapContainsKeyOrPut(
-      MethodInvocationNode containsKeyOrPutNode, NullSpecStore store) {
-    Tree containsKeyOrPutReceiver = containsKeyOrPutNode.getTarget().getReceiver().getTree();
-    if (containsKeyOrPutReceiver == null) {
-      /*
-       * TODO(cpovirk): Handle the case of a null containsKeyOrPutReceiver (probably
-       * ImplicitThisNode).
-       */
-      return false;
-    }
+  /*
+   * "@KeyFor Lite": After `map.containsKey(key)` or `map.put(key, value)`, we record in the store
+   * that `key` is a key of `map`. Then, if we see `map.get(key)` or `map.remove(key)` (or a call to
+   * an override of either) while that fact still holds, we treat the call as returning the map's
+   * value type instead of its nullable version. NullSpecStore drops the fact when the map or key
+   * may have changed: on remove, clear, and similar calls; on assignments; and on calls to methods
+   * that aren't side-effect-free.
+   *
+   * TODO(cpovirk): This is surely still flawed in various ways. For example, we don't notice
+   * removals through views like keySet() or through an iterator.
+   */
 
-    MapType mapType = new MapType(containsKeyOrPutReceiver);
-    MethodCall containsKeyOrPutCall = (MethodCall) fromNode(containsKeyOrPutNode);
+  private boolean recordMapKey(MethodInvocationNode containsKeyOrPutNode, NullSpecStore store) {
+    return store.addMapKey(
+        fromNode(containsKeyOrPutNode.getTarget().getReceiver()),
+        fromNode(containsKeyOrPutNode.getArgument(0)));
+  }
 
-    /*
-     * We want to refine the type of any future call to `map.get(key)`. To do so, we need to create
-     * a MethodCall with the appropriate values -- in particular, with the appropriate
-     * ExecutableElement for the `map.get` call. The appropriate ExecutableElement is not
-     * necessarily `java.util.Map.get(Object)` itself, since the call may resolve to an override of
-     * that method. Which override? There may be a way to figure it out, but we take the brute-force
-     * approach of creating a MethodCall for *every* override and refining the type of each one.
-     *
-     * XXX: It's theoretically possible for an override's return type to be more specific than the
-     * return type of Map.get. This seems extremely unlikely in practice, but maybe it will be more
-     * likely with other methods to which we apply the same pattern in the future.
-     *
-     * To address that theoretical concern (and to move some of the complexity out of this method),
-     * we could consider an alternative approach: Insert an entry only for java.util.Map.get itself,
-     * and make visitMethodInvocation look up that entry whenever the method it visits is an
-     * override of Map.get. However, it worries me that we could potentially end up with different
-     * entries for Map.get and its override. I *suspect* that we could always take the more specific
-     * one, but given that the existing code works, I'm not going to take any risk right now.
-     */
-    List<ExecutableElement> mapGetAndRemoveAndOverrides = new ArrayList<>();
-    mapGetAndRemoveAndOverrides.addAll(methodAndOverrides(util.mapGetElement, mapType.type));
-    mapGetAndRemoveAndOverrides.addAll(methodAndOverrides(util.mapRemoveElement, mapType.type));
+  private boolean forgetMapKey(MethodInvocationNode node, NullSpecStore store) {
+    return store.removeMapKey(
+        fromNode(node.getTarget().getReceiver()), fromNode(node.getArgument(0)));
+  }
 
-    boolean storeChanged = false;
-    for (ExecutableElement mapGetOrRemoveOrOverride : mapGetAndRemoveAndOverrides) {
-      MethodCall getOrRemoveCall =
-          new MethodCall(
-              mapType.mapValueAsDataflowValue.getUnderlyingType(),
-              mapGetOrRemoveOrOverride,
-              containsKeyOrPutCall.getReceiver(),
-              containsKeyOrPutCall.getArguments().subList(0, 1));
+  private boolean forgetAllMapKeys(MethodInvocationNode clearNode, NullSpecStore store) {
+    return store.removeAllMapKeys(fromNode(clearNode.getTarget().getReceiver()));
+  }
+
+  private boolean isKnownMapKey(MethodInvocationNode getOrRemoveNode, NullSpecStore store) {
+    return store.isKnownMapKey(
+        fromNode(getOrRemoveNode.getTarget().getReceiver()),
+        fromNode(getOrRemoveNode.getArgument(0)));
+  }
 
+  private void refineMapGetOrRemoveResultForKnownKey(
+      MethodInvocationNode getOrRemoveNode, TransferResult<CFValue, NullSpecStore> result) {
+    Tree mapReceiver = getOrRemoveNode.getTarget().getReceiver().getTree();
+    if (mapReceiver == null) {
       /*
-       * TODO(cpovirk): This "@KeyFor Lite" support is surely flawed in various ways. For example,
-       * we don't remove information if someone calls remove(key). But I'm probably failing to even
-       * think of bigger problems.
+       * TODO(cpovirk): Handle the case of a null mapReceiver (probably ImplicitThisNode). That
+       * requires finding the map's value type without a tree.
        */
-      storeChanged |= refine(getOrRemoveCall, mapType.mapValueAsDataflowValue, store);
+      return;
     }
-    return storeChanged;
+    /*
+     * XXX: It's theoretically possible for an override's return type to be more specific than the
+     * map's value type. If so, moreSpecificValue keeps the more specific one.
+     */
+    result.setResultValue(
+        moreSpecificValue(result.getResultValue(), mapType(mapReceiver).mapValueAsDataflowValue));
   }
 
   private List<ExecutableElement> methodAndOverrides(
       ExecutableElement method, AnnotatedTypeMirror receiver) {
-    return getAllDeclaredSupertypes(receiver).stream()
-        .flatMap(type -> type.getUnderlyingType().asElement().getEnclosedElements().stream())
-        .filter(ExecutableElement.class::isInstance)
-        .map(ExecutableElement.class::cast)
-        /*
-         * TODO(cpovirk): It would be more correct to pass the corresponding `TypeElement type`
-         * to Elements.overrides.
-         */
-        .filter(e -> isOrOverrides(e, method))
-        .collect(toList());
+    if (receiver instanceof AnnotatedDeclaredType) {
+      // The common case: The answer depends only on the class, so Util can cache it.
+      return util.methodAndOverrides(
+          (TypeElement) ((AnnotatedDeclaredType) receiver).getUnderlyingType().asElement(), method);
+    }
+    /*
+     * Otherwise (e.g., for a type variable), find the classes that the receiver's bounds lead to,
+     * and let Util look at their supertypes (with caching) from there.
+     */
+    Set<TypeElement> declaredSupertypes = new LinkedHashSet<>();
+    collectNearestDeclaredSupertypes(receiver, declaredSupertypes);
+    Set<ExecutableElement> result = new LinkedHashSet<>();
+    for (TypeElement declaredSupertype : declaredSupertypes) {
+      result.addAll(util.methodAndOverrides(declaredSupertype, method));
+    }
+    return new ArrayList<>(result);
   }
 
   private void refinePathGetFileNameResultIfDirectoryStreamLoop(
@@ -632,7 +693,7 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
     }
     ExpressionTree mapGetReceiverExpression = (ExpressionTree) mapGetReceiver;
     Element mapGetArgElement = elementFromTree(mapGetNode.getArgument(0).getTree());
-    MapType mapType = new MapType(mapGetReceiver);
+    MapType mapType = mapType(mapGetReceiver);
 
     /*
      * TODO(cpovirk): Benchmark the cost of looking the entire way up the tree path. Maybe we should
@@ -687,6 +748,25 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
     }
   }
 
+  /*
+   * MapType is computed for every Map.get, containsKey, and put node on every pass over the method,
+   * and each computation involves getAnnotatedType, asSuper, and capture conversion. Its result
+   * depends only on the receiver's declared type: Dataflow refines top-level annotations but never
+   * type arguments, so the map's value type is the same no matter where in the method we are. We
+   * therefore compute it once per receiver tree and throw the results away when the analysis of
+   * the enclosing method (or lambda or initializer) ends.
+   */
+  private final Map<Tree, MapType> mapTypes = new IdentityHashMap<>();
+
+  private MapType mapType(Tree receiverTree) {
+    return mapTypes.computeIfAbsent(receiverTree, MapType::new);
+  }
+
+  /** Drops state that is valid only during a single run of {@link NullSpecAnalysis}. */
+  void analysisFinished() {
+    mapTypes.clear();
+  }
+
   private final class MapType {
     final AnnotatedTypeMirror type;
     final CFValue mapValueAsDataflowValue;
@@ -1089,22 +1169,18 @@ final class NullSpecTransfer extends CFAbstractTransfer<CFValue, NullSpecStore,
   }
 
   /**
-   * Returns all declared supertypes of the given type, including the type itself and any transitive
-   * supertypes. The returned list may contain duplicates.
+   * Collects the classes of the declared types that are reachable from {@code type} through
+   * supertypes of types that are not themselves declared types (like type variables and
+   * intersection types). Supertypes of those classes are left to {@link Util#supertypeClosure}.
    */
-  private static List<AnnotatedDeclaredType> getAllDeclaredSupertypes(AnnotatedTypeMirror type) {
-    List<AnnotatedDeclaredType> result = new ArrayList<>();
-    collectAllDeclaredSupertypes(type, result);
-    return result;
-  }
-
-  private static void collectAllDeclaredSupertypes(
-      AnnotatedTypeMirror type, List<AnnotatedDeclaredType> result) {
+  private static void collectNearestDeclaredSupertypes(
+      AnnotatedTypeMirror type, Set<TypeElement> result) {
     if (type instanceof AnnotatedDeclaredType) {
-      result.add((AnnotatedDeclaredType) type);
+      result.add((TypeElement) ((AnnotatedDeclaredType) type).getUnderlyingType().asElement());
+      return;
     }
     for (AnnotatedTypeMirror supertype : type.directSupertypes()) {
-      collectAllDeclaredSupertypes(supertype, result);
+      collectNearestDeclaredSupertypes(supertype, result);
     }
   }
 
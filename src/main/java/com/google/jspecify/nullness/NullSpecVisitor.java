@@ -60,17 +60,15 @@ import com.sun.source.tree.Tree;
 import com.sun.source.tree.Tree.Kind;
 import com.sun.source.tree.TypeParameterTree;
 import com.sun.source.tree.VariableTree;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.DeclaredType;
-import javax.lang.model.type.TypeMirror;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
@@ -79,12 +77,14 @@ import org.checkerframework.javacutil.AnnotationBuilder;
 
 final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory> {
   private final boolean checkImpl;
+  private final boolean apiOnly;
   private final Util util;
 
   NullSpecVisitor(NullSpecChecker checker, Util util) {
     super(checker);
     this.util = util;
-    checkImpl = checker.hasOption("checkImpl");
+    apiOnly = checker.hasOption("apiOnly");
+    checkImpl = checker.hasOption("checkImpl") && !apiOnly;
   }
 
   private void ensureNonNull(Tree tree) {
@@ -96,8 +96,39 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
     // Maybe this should call isSubtype(type, objectMinusNull)? I'd need to create objectMinusNull.
     if (!isPrimitive(type.getUnderlyingType())
         && !atypeFactory.isNullExclusiveUnderEveryParameterization(type)) {
-      String origin = originString(tree);
-      checker.reportError(tree, messageKey, type + (origin.isEmpty() ? "" : ", " + origin));
+      checker.reportError(
+          tree,
+          messageKey,
+          new DeferredMessageArgument(
+              () -> {
+                String origin = originString(tree);
+                return type + (origin.isEmpty() ? "" : ", " + origin);
+              }));
+    }
+  }
+
+  /**
+   * A message argument whose text is computed only if the diagnostic is actually printed.
+   *
+   * <p>The Checker Framework converts message arguments to strings only after it has checked
+   * whether the diagnostic is suppressed. Until then, we avoid formatting types and (for ternaries)
+   * computing the types of both branches, which matters for code with many suppressed errors.
+   */
+  private static final class DeferredMessageArgument {
+    private final Supplier<String> supplier;
+    private String value;
+
+    DeferredMessageArgument(Supplier<String> supplier) {
+      this.supplier = supplier;
+    }
+
+    @Override
+    public String toString() {
+      // With -Adetailedmsgtext, the framework may call this more than once.
+      if (value == null) {
+        value = supplier.get();
+      }
+      return value;
     }
   }
 
@@ -381,35 +412,18 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
 
   private boolean overridesInitialValue(TypeElement clazz) {
     // ThreadLocal.initialValue() can be absent if we're running with j2cl's limited classpath.
-    return util.threadLocalInitialValueElement.isPresent()
-        && getAllDeclaredSupertypes(clazz.asType()).stream()
-            .flatMap(type -> type.asElement().getEnclosedElements().stream())
-            .filter(ExecutableElement.class::isInstance)
-            .map(ExecutableElement.class::cast)
-            .anyMatch(
-                e ->
-                    atypeFactory
-                        .getElementUtils()
-                        .overrides(e, util.threadLocalInitialValueElement.get(), clazz));
-  }
-
-  /**
-   * Returns all supertypes of the given type, including the type itself and any transitive
-   * supertypes. The returned list may contain duplicates.
-   */
-  private List<DeclaredType> getAllDeclaredSupertypes(TypeMirror type) {
-    List<DeclaredType> result = new ArrayList<>();
-    collectAllDeclaredSupertypes(type, result);
-    return result;
-  }
-
-  private void collectAllDeclaredSupertypes(TypeMirror type, List<DeclaredType> result) {
-    if (type instanceof DeclaredType) {
-      result.add((DeclaredType) type);
+    if (!util.threadLocalInitialValueElement.isPresent()) {
+      return false;
     }
-    for (TypeMirror supertype : types.directSupertypes(type)) {
-      collectAllDeclaredSupertypes(supertype, result);
+    ExecutableElement initialValue = util.threadLocalInitialValueElement.get();
+    for (TypeElement supertype : util.supertypeClosure(clazz)) {
+      for (ExecutableElement method : util.methodsNamed(supertype, "initialValue")) {
+        if (atypeFactory.getElementUtils().overrides(method, initialValue, clazz)) {
+          return true;
+        }
+      }
     }
+    return false;
   }
 
   /*
@@ -464,7 +478,7 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
   public Void visitVariable(VariableTree tree, Void p) {
     // For discussion of short-circuiting, see processClassTree.
     List<? extends AnnotationTree> annotations = tree.getModifiers().getAnnotations();
-    if (util.hasSuppressWarningsNullness(annotations)) {
+    if (util.isSuppressed(root, tree)) {
       return null;
     }
     // implicit lambda parameter types
@@ -498,6 +512,17 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
         checkNoNullnessAnnotations(tree, annotations, "local.variable.annotated");
       }
     }
+    if (apiOnly && kind.isField() && tree.getInitializer() != null) {
+      /*
+       * A field initializer (including an enum constant's, which may declare a class body) is
+       * implementation code. We still check the field's type, but we skip the supermethod, which
+       * would check the initializer against that type and then scan the initializer.
+       */
+      validateTypeOf(tree);
+      scan(tree.getModifiers(), p);
+      scan(tree.getType(), p);
+      return null;
+    }
     return super.visitVariable(tree, p);
   }
 
@@ -505,7 +530,7 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
   public Void visitMethod(MethodTree tree, Void p) {
     // For discussion of short-circuiting, see processClassTree.
     List<? extends AnnotationTree> annotations = tree.getModifiers().getAnnotations();
-    if (util.hasSuppressWarningsNullness(annotations)) {
+    if (util.isSuppressed(root, tree)) {
       return null;
     }
 
@@ -547,7 +572,7 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
      * to skip all expensive work, so we must also override preProcessClassTree in
      * NullSpecAnnotatedTypeFactory.
      */
-    if (util.hasSuppressWarningsNullness(tree.getModifiers().getAnnotations())) {
+    if (util.isSuppressed(root, tree)) {
       return;
     }
 
@@ -635,6 +660,11 @@ final class NullSpecVisitor extends BaseTypeVisitor<NullSpecAnnotatedTypeFactory
   @Override
   protected NullSpecAnnotatedTypeFactory createTypeFactory() {
     // Reading util this way is ugly but necessary. See discussion in NullSpecChecker.
-    return new NullSpecAnnotatedTypeFactory(checker, ((NullSpecChecker) checker).util);
+    NullSpecChecker nullSpecChecker = (NullSpecChecker) checker;
+    return new NullSpecAnnotatedTypeFactory(
+        checker,
+        nullSpecChecker.util,
+        nullSpecChecker.returnNullnessSummaries,
+        nullSpecChecker.metrics);
   }
 }
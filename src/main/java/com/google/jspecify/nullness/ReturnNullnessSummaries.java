@@ -0,0 +1,382 @@
+// Copyright 2023 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
+import static javax.lang.model.element.ElementKind.CONSTRUCTOR;
+import static javax.lang.model.element.ElementKind.METHOD;
+import static javax.lang.model.element.ElementKind.PARAMETER;
+import static javax.lang.model.element.Modifier.ABSTRACT;
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.NATIVE;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.STATIC;
+import static javax.lang.model.type.TypeKind.VOID;
+import static org.checkerframework.javacutil.TreeUtils.elementFromTree;
+import static org.checkerframework.javacutil.TreeUtils.elementFromUse;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Summaries of whether methods declared in the current compilation unit can return null, computed
+ * from their bodies and consulted by {@link NullSpecTransfer} at call sites. Enabled by the {@code
+ * summarizeReturns} option.
+ *
+ * <p>We summarize only methods that can't be overridden (private, static, and final methods, and
+ * methods of final classes), since otherwise the body we see need not be the one that runs. A
+ * summary says either that the method never returns null or that it returns null only if one of a
+ * given set of its parameters is null.
+ */
+final class ReturnNullnessSummaries {
+  /*
+   * The analysis is purely syntactic: It looks at the expression of each return statement and
+   * accepts only expressions that obviously can't be null (object creation, non-null literals,
+   * string concatenation, `this`, ...), calls to other summarized methods, and parameters that the
+   * method never assigns to. Anything else makes the method UNKNOWN, in which case we fall back to
+   * its declared return type, just as we did before this class existed.
+   *
+   * To keep the cost bounded, we follow calls to other methods only to a limited depth, and we
+   * give up on methods with very many return statements. Recursive calls (direct or mutual) are
+   * treated as UNKNOWN while the cycle is being summarized. That's pessimistic but sound, and the
+   * summary we compute is memoized, so each method is analyzed at most once per compilation unit.
+   */
+
+  private static final int MAX_CALL_DEPTH = 8;
+  private static final int MAX_RETURN_STATEMENTS = 64;
+
+  private final Trees trees;
+  private final Map<ExecutableElement, Summary> summaries = new HashMap<>();
+  private final Set<ExecutableElement> inProgress = new HashSet<>();
+  private CompilationUnitTree root;
+
+  ReturnNullnessSummaries(Trees trees) {
+    this.trees = trees;
+  }
+
+  /**
+   * Returns the summary for {@code method}, which is called from code in {@code root}. Methods
+   * declared outside {@code root} are always {@link Summary#UNKNOWN}.
+   */
+  Summary summaryFor(ExecutableElement method, CompilationUnitTree root) {
+    if (root != this.root) {
+      // Summaries refer to trees, so they are valid only for a single compilation unit.
+      summaries.clear();
+      this.root = root;
+    }
+    return summaryFor(method, /* depth= */ 0);
+  }
+
+  /** Drops all summaries, as when the checker is done with a compilation unit. */
+  void clear() {
+    summaries.clear();
+    root = null;
+  }
+
+  private Summary summaryFor(ExecutableElement method, int depth) {
+    Summary summary = summaries.get(method);
+    if (summary != null) {
+      return summary;
+    }
+    if (depth > MAX_CALL_DEPTH || !inProgress.add(method)) {
+      // Don't memoize: A shallower or non-recursive query may be able to do better.
+      return Summary.UNKNOWN;
+    }
+    try {
+      summary = computeSummary(method, depth);
+    } finally {
+      inProgress.remove(method);
+    }
+    summaries.put(method, summary);
+    return summary;
+  }
+
+  private Summary computeSummary(ExecutableElement method, int depth) {
+    if (!isSummarizable(method)) {
+      return Summary.UNKNOWN;
+    }
+    TreePath path = trees.getPath(method);
+    if (path == null
+        || path.getCompilationUnit() != root
+        || !(path.getLeaf() instanceof MethodTree)) {
+      return Summary.UNKNOWN;
+    }
+    MethodTree tree = (MethodTree) path.getLeaf();
+    if (tree.getBody() == null) {
+      return Summary.UNKNOWN;
+    }
+
+    List<ExpressionTree> returnedExpressions = returnedExpressions(tree);
+    if (returnedExpressions == null) {
+      return Summary.UNKNOWN;
+    }
+    Set<Element> reassignedParameters = reassignedParameters(tree);
+    Summary result = Summary.NON_NULL;
+    for (ExpressionTree expression : returnedExpressions) {
+      result = result.and(summarizeExpression(expression, method, reassignedParameters, depth));
+      if (result == Summary.UNKNOWN) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isSummarizable(ExecutableElement method) {
+    if (method.getKind() != METHOD
+        || method.getModifiers().contains(ABSTRACT)
+        || method.getModifiers().contains(NATIVE)
+        || method.getReturnType().getKind().isPrimitive()
+        || method.getReturnType().getKind() == VOID) {
+      return false;
+    }
+    return method.getModifiers().contains(PRIVATE)
+        || method.getModifiers().contains(STATIC)
+        || method.getModifiers().contains(FINAL)
+        || ((TypeElement) method.getEnclosingElement()).getModifiers().contains(FINAL);
+  }
+
+  /**
+   * Returns the expressions of the method's own return statements (excluding those of lambdas and
+   * nested classes), or {@code null} if there are too many to analyze.
+   */
+  private static List<ExpressionTree> returnedExpressions(MethodTree tree) {
+    List<ExpressionTree> result = new ArrayList<>();
+    boolean[] tooMany = new boolean[1];
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void visitReturn(ReturnTree node, Void unused) {
+        if (result.size() == MAX_RETURN_STATEMENTS) {
+          tooMany[0] = true;
+        } else {
+          result.add(node.getExpression());
+        }
+        return null;
+      }
+
+      @Override
+      public Void visitLambdaExpression(LambdaExpressionTree node, Void unused) {
+        return null;
+      }
+
+      @Override
+      public Void visitClass(ClassTree node, Void unused) {
+        return null;
+      }
+    }.scan(tree.getBody(), null);
+    return tooMany[0] ? null : result;
+  }
+
+  /** Returns the parameters of the method that its body (or any code nested in it) assigns to. */
+  private static Set<Element> reassignedParameters(MethodTree tree) {
+    Set<Element> result = new HashSet<>();
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void visitAssignment(AssignmentTree node, Void unused) {
+        addIfParameter(node.getVariable());
+        return super.visitAssignment(node, unused);
+      }
+
+      @Override
+      public Void visitCompoundAssignment(CompoundAssignmentTree node, Void unused) {
+        addIfParameter(node.getVariable());
+        return super.visitCompoundAssignment(node, unused);
+      }
+
+      private void addIfParameter(ExpressionTree variable) {
+        if (variable instanceof IdentifierTree) {
+          Element element = elementFromUse(variable);
+          if (element != null && element.getKind() == PARAMETER) {
+            result.add(element);
+          }
+        }
+      }
+    }.scan(tree.getBody(), null);
+    return result;
+  }
+
+  private Summary summarizeExpression(
+      ExpressionTree expression,
+      ExecutableElement method,
+      Set<Element> reassignedParameters,
+      int depth) {
+    switch (expression.getKind()) {
+      case PARENTHESIZED:
+        return summarizeExpression(
+            ((ParenthesizedTree) expression).getExpression(),
+            method,
+            reassignedParameters,
+            depth);
+
+      case TYPE_CAST:
+        return summarizeExpression(
+            ((TypeCastTree) expression).getExpression(), method, reassignedParameters, depth);
+
+      case CONDITIONAL_EXPRESSION:
+        {
+          ConditionalExpressionTree conditional = (ConditionalExpressionTree) expression;
+          return summarizeExpression(
+                  conditional.getTrueExpression(), method, reassignedParameters, depth)
+              .and(
+                  summarizeExpression(
+                      conditional.getFalseExpression(), method, reassignedParameters, depth));
+        }
+
+      case NEW_CLASS:
+      case NEW_ARRAY:
+      case LAMBDA_EXPRESSION:
+      case MEMBER_REFERENCE:
+        return Summary.NON_NULL;
+
+      case NULL_LITERAL:
+        return Summary.UNKNOWN;
+
+      case IDENTIFIER:
+        {
+          if (((IdentifierTree) expression).getName().contentEquals("this")) {
+            return Summary.NON_NULL;
+          }
+          Element element = elementFromUse(expression);
+          if (element == null
+              || element.getKind() != PARAMETER
+              || reassignedParameters.contains(element)) {
+            return Summary.UNKNOWN;
+          }
+          int index = method.getParameters().indexOf(element);
+          return index < 0 ? Summary.UNKNOWN : Summary.nonNullIfArgumentNonNull(index);
+        }
+
+      case MEMBER_SELECT:
+        {
+          // Foo.class or Outer.this
+          String name = ((MemberSelectTree) expression).getIdentifier().toString();
+          return name.equals("class") || name.equals("this") ? Summary.NON_NULL : Summary.UNKNOWN;
+        }
+
+      case METHOD_INVOCATION:
+        return summarizeCall(
+            (MethodInvocationTree) expression, method, reassignedParameters, depth);
+
+      default:
+        if (expression instanceof LiteralTree || expression instanceof BinaryTree) {
+          /*
+           * Any non-null literal, and the result of any binary operator, is a primitive or a
+           * String. Either way, it's non-null (after boxing, if necessary).
+           */
+          return Summary.NON_NULL;
+        }
+        return Summary.UNKNOWN;
+    }
+  }
+
+  private Summary summarizeCall(
+      MethodInvocationTree call,
+      ExecutableElement method,
+      Set<Element> reassignedParameters,
+      int depth) {
+    Element callee = elementFromTree(call);
+    if (!(callee instanceof ExecutableElement) || callee.getKind() == CONSTRUCTOR) {
+      return Summary.UNKNOWN;
+    }
+    ExecutableElement calleeMethod = (ExecutableElement) callee;
+    Summary calleeSummary = summaryFor(calleeMethod, depth + 1);
+    Summary result = Summary.NON_NULL;
+    for (int index : calleeSummary.nonNullIfArgumentsNonNull) {
+      if (calleeMethod.isVarArgs() && index == calleeMethod.getParameters().size() - 1) {
+        // The argument for a varargs parameter may be an implicitly created array.
+        return Summary.UNKNOWN;
+      }
+      result =
+          result.and(
+              summarizeExpression(
+                  call.getArguments().get(index), method, reassignedParameters, depth));
+    }
+    return calleeSummary.isKnown() ? result : Summary.UNKNOWN;
+  }
+
+  /** What we know about whether a method can return null. */
+  static final class Summary {
+    /** We don't know whether the method can return null. */
+    static final Summary UNKNOWN = new Summary(false, emptySet());
+
+    /** The method never returns null. */
+    static final Summary NON_NULL = new Summary(true, emptySet());
+
+    private final boolean known;
+
+    /**
+     * The indexes of the parameters that must be non-null for the method to return non-null. Empty
+     * for {@link #NON_NULL} and {@link #UNKNOWN}.
+     */
+    final Set<Integer> nonNullIfArgumentsNonNull;
+
+    private Summary(boolean known, Set<Integer> nonNullIfArgumentsNonNull) {
+      this.known = known;
+      this.nonNullIfArgumentsNonNull = nonNullIfArgumentsNonNull;
+    }
+
+    static Summary nonNullIfArgumentNonNull(int index) {
+      Set<Integer> indexes = new HashSet<>();
+      indexes.add(index);
+      return new Summary(true, unmodifiableSet(indexes));
+    }
+
+    boolean isKnown() {
+      return known;
+    }
+
+    /** Returns a summary that holds when both this summary and {@code other} hold. */
+    Summary and(Summary other) {
+      if (!known || !other.known) {
+        return UNKNOWN;
+      }
+      if (other.nonNullIfArgumentsNonNull.isEmpty()) {
+        return this;
+      }
+      if (nonNullIfArgumentsNonNull.isEmpty()) {
+        return other;
+      }
+      Set<Integer> indexes = new HashSet<>(nonNullIfArgumentsNonNull);
+      indexes.addAll(other.nonNullIfArgumentsNonNull);
+      return new Summary(true, unmodifiableSet(indexes));
+    }
+  }
+}
@@ -0,0 +1,307 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Writes {@link CheckerDiagnostic}s to a file in <a
+ * href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a> format.
+ * This is the implementation of the {@code -AsarifOut} option.
+ *
+ * <p>The file has a single run. Its rules are the checker's message keys, written once, up front.
+ * Its results are written as they are reported, so memory use doesn't grow with the number of
+ * diagnostics.
+ *
+ * <p>Each rule and each result is on its own line. {@link #merge} relies on that to combine the
+ * outputs of several compilations (for example, of a build that is sharded across processes) into
+ * one run without holding the results in memory. To merge files from the command line, run this
+ * class's {@link #main} with the output file followed by the input files.
+ */
+final class SarifWriter implements DiagnosticSink {
+  private static final String TOOL_NAME = "jspecify-reference-checker";
+  private static final String TOOL_URI = "https://github.com/jspecify/jspecify-reference-checker";
+
+  private static final String RULES_START =
+      "{\"version\":\"2.1.0\","
+          + "\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\","
+          + "\"runs\":[{\"tool\":{\"driver\":{"
+          + "\"name\":\""
+          + TOOL_NAME
+          + "\",\"informationUri\":\""
+          + TOOL_URI
+          + "\",\"rules\":[";
+  private static final String RESULTS_START = "]}},\"results\":[";
+  private static final String END = "]}]}";
+
+  /** The prefix of each result line, which {@link #merge} reads the rule ID from. */
+  private static final String RESULT_PREFIX = "{\"ruleId\":";
+
+  private final BufferedWriter out;
+  private final Map<String, Integer> ruleIndexes;
+  /** Reused across results to avoid allocating a builder per diagnostic. */
+  private final StringBuilder result = new StringBuilder(256);
+
+  private boolean wroteResult;
+
+  /**
+   * Opens {@code file} and writes the rules.
+   *
+   * @param messages the checker's message formats, keyed by message key
+   */
+  SarifWriter(Path file, Properties messages) throws IOException {
+    Map<String, String> rules = new TreeMap<>();
+    for (String key : messages.stringPropertyNames()) {
+      rules.put(key, messages.getProperty(key));
+    }
+    this.out = Files.newBufferedWriter(file, UTF_8);
+    this.ruleIndexes = writeRules(out, rules);
+    out.write(RESULTS_START);
+  }
+
+  private static Map<String, Integer> writeRules(BufferedWriter out, Map<String, String> rules)
+      throws IOException {
+    Map<String, Integer> ruleIndexes = new HashMap<>();
+    StringBuilder rule = new StringBuilder(256);
+    out.write(RULES_START);
+    for (Map.Entry<String, String> entry : rules.entrySet()) {
+      rule.setLength(0);
+      if (!ruleIndexes.isEmpty()) {
+        rule.append(',');
+      }
+      rule.append('\n');
+      appendRule(rule, entry.getKey(), entry.getValue());
+      out.append(rule);
+      ruleIndexes.put(entry.getKey(), ruleIndexes.size());
+    }
+    out.write('\n');
+    return ruleIndexes;
+  }
+
+  private static void appendRule(StringBuilder rule, String id, String description) {
+    rule.append('{');
+    Json.appendString(Json.appendName(rule, "id"), id);
+    Json.appendName(rule, "shortDescription").append('{');
+    Json.appendString(Json.appendName(rule, "text"), description);
+    rule.append("}}");
+  }
+
+  @Override
+  public void write(CheckerDiagnostic diagnostic) {
+    result.setLength(0);
+    if (wroteResult) {
+      result.append(',');
+    }
+    result.append('\n').append(RESULT_PREFIX);
+    Json.appendString(result, diagnostic.messageKey);
+    Integer ruleIndex = ruleIndexes.get(diagnostic.messageKey);
+    if (ruleIndex != null) {
+      Json.appendName(result, "ruleIndex").append(ruleIndex);
+    }
+    Json.appendString(Json.appendName(result, "level"), level(diagnostic));
+    Json.appendName(result, "message").append('{');
+    Json.appendString(Json.appendName(result, "text"), diagnostic.message);
+    result.append('}');
+    if (diagnostic.file != null) {
+      Json.appendName(result, "locations").append("[{");
+      Json.appendName(result, "physicalLocation").append('{');
+      Json.appendName(result, "artifactLocation").append('{');
+      Json.appendString(
+          Json.appendName(result, "uri"),
+          Paths.get(diagnostic.file).toAbsolutePath().toUri().toString());
+      result.append('}');
+      if (diagnostic.line > 0) {
+        Json.appendName(result, "region").append('{');
+        Json.appendName(result, "startLine").append(diagnostic.line);
+        Json.appendName(result, "startColumn").append(diagnostic.column);
+        if (diagnostic.startOffset >= 0 && diagnostic.endOffset >= diagnostic.startOffset) {
+          Json.appendName(result, "charOffset").append(diagnostic.startOffset);
+          Json.appendName(result, "charLength")
+              .append(diagnostic.endOffset - diagnostic.startOffset);
+        }
+        result.append('}');
+      }
+      result.append("}}]");
+    }
+    result.append('}');
+    try {
+      out.append(result);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    wroteResult = true;
+  }
+
+  private static String level(CheckerDiagnostic diagnostic) {
+    switch (diagnostic.kind) {
+      case ERROR:
+        return "error";
+      case WARNING:
+      case MANDATORY_WARNING:
+        return "warning";
+      default:
+        return "note";
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      out.write('\n');
+      out.write(END);
+      out.write('\n');
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Combines files written by {@link SarifWriter} into one file with a single run. The rules are
+   * the union of the inputs' rules, and results are renumbered to refer to them.
+   *
+   * <p>Only the rules are held in memory; results are copied a line at a time.
+   */
+  static void merge(List<Path> inputs, Path output) throws IOException {
+    Map<String, String> rules = new LinkedHashMap<>();
+    for (Path input : inputs) {
+      try (BufferedReader in = Files.newBufferedReader(input, UTF_8)) {
+        expectLine(input, in, RULES_START);
+        for (String line = nextLine(input, in);
+            !line.equals(RESULTS_START);
+            line = nextLine(input, in)) {
+          String rule = stripTrailingComma(line);
+          rules.putIfAbsent(ruleId(input, rule, "{\"id\":"), rule);
+        }
+      }
+    }
+
+    try (BufferedWriter out = Files.newBufferedWriter(output, UTF_8)) {
+      Map<String, Integer> ruleIndexes = new HashMap<>();
+      out.write(RULES_START);
+      for (Map.Entry<String, String> rule : rules.entrySet()) {
+        out.write(ruleIndexes.isEmpty() ? "\n" : ",\n");
+        out.write(rule.getValue());
+        ruleIndexes.put(rule.getKey(), ruleIndexes.size());
+      }
+      out.write('\n');
+      out.write(RESULTS_START);
+
+      boolean wroteResult = false;
+      StringBuilder result = new StringBuilder(256);
+      for (Path input : inputs) {
+        try (BufferedReader in = Files.newBufferedReader(input, UTF_8)) {
+          String line;
+          do {
+            line = nextLine(input, in);
+          } while (!line.equals(RESULTS_START));
+          for (line = nextLine(input, in); !line.equals(END); line = nextLine(input, in)) {
+            String oldResult = stripTrailingComma(line);
+            String ruleId = ruleId(input, oldResult, RESULT_PREFIX);
+            result.setLength(0);
+            result.append(wroteResult ? ",\n" : "\n");
+            result.append(RESULT_PREFIX);
+            Json.appendString(result, ruleId);
+            Integer ruleIndex = ruleIndexes.get(ruleId);
+            if (ruleIndex != null) {
+              Json.appendName(result, "ruleIndex").append(ruleIndex);
+            }
+            result.append(oldResult, afterRuleIndex(oldResult), oldResult.length());
+            out.append(result);
+            wroteResult = true;
+          }
+        }
+      }
+      out.write('\n');
+      out.write(END);
+      out.write('\n');
+    }
+  }
+
+  private static void expectLine(Path input, BufferedReader in, String expected)
+      throws IOException {
+    String line = in.readLine();
+    if (!expected.equals(line)) {
+      throw new IOException(input + " was not written by " + SarifWriter.class.getName());
+    }
+  }
+
+  /** Reads the next line, which must exist: a file that ends before {@link #END} is truncated. */
+  private static String nextLine(Path input, BufferedReader in) throws IOException {
+    String line = in.readLine();
+    if (line == null) {
+      throw new IOException(input + " ends unexpectedly; it may be truncated");
+    }
+    return line;
+  }
+
+  private static String stripTrailingComma(String line) {
+    return line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
+  }
+
+  /**
+   * Returns the ID that follows {@code prefix} at the start of {@code line}. We never write IDs
+   * that need escaping, so the ID ends at the next quote.
+   */
+  private static String ruleId(Path input, String line, String prefix) throws IOException {
+    int idStart = prefix.length() + 1;
+    int idEnd = line.indexOf('"', idStart);
+    if (!line.startsWith(prefix) || idEnd < 0) {
+      throw new IOException("Unexpected line in " + input + ": " + line);
+    }
+    return line.substring(idStart, idEnd);
+  }
+
+  /** Returns the index just past the rule ID and rule index (if any) at the start of a result. */
+  private static int afterRuleIndex(String result) {
+    int afterId = result.indexOf('"', RESULT_PREFIX.length() + 1) + 1;
+    String ruleIndexName = ",\"ruleIndex\":";
+    if (!result.startsWith(ruleIndexName, afterId)) {
+      return afterId;
+    }
+    int afterIndex = afterId + ruleIndexName.length();
+    while (Character.isDigit(result.charAt(afterIndex))) {
+      afterIndex++;
+    }
+    return afterIndex;
+  }
+
+  /** Usage: {@code SarifWriter <output> <input>...}. See {@link #merge}. */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: SarifWriter <output.sarif> <input.sarif>...");
+      System.exit(2);
+    }
+    List<Path> inputs = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      inputs.add(Paths.get(args[i]));
+    }
+    merge(inputs, Paths.get(args[0]));
+  }
+}
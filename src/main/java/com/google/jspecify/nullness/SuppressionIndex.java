@@ -0,0 +1,246 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.sort;
+import static org.checkerframework.javacutil.TreeUtils.annotationFromAnnotationTree;
+import static org.checkerframework.javacutil.TreeUtils.elementFromTree;
+
+import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreeScanner;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.SimpleAnnotationValueVisitor8;
+
+/**
+ * The source ranges of one compilation unit that are covered by a {@code @SuppressWarnings}
+ * annotation with one of the checker's prefixes (e.g., {@code @SuppressWarnings("nullness")}).
+ *
+ * <p>NullSpecVisitor and NullSpecAnnotatedTypeFactory ask whether each class, method, and variable
+ * they visit is suppressed. Answering from the annotations on each tree means converting them to
+ * mirrors and inspecting their values every time. Instead, we scan the compilation unit once, look
+ * closely only at {@code @SuppressWarnings} annotations, and record the ranges they cover as
+ * sorted, disjoint intervals. A query is then a binary search -- and, in the common case of a
+ * compilation unit with no suppressions, a check of whether the index is empty.
+ */
+final class SuppressionIndex {
+  private final CompilationUnitTree root;
+  private final SourcePositions positions;
+  /** Interval starts, in increasing order. */
+  private final long[] starts;
+  /** Interval ends (exclusive). {@code ends[i]} belongs to {@code starts[i]}. */
+  private final long[] ends;
+
+  private SuppressionIndex(
+      CompilationUnitTree root, SourcePositions positions, long[] starts, long[] ends) {
+    this.root = root;
+    this.positions = positions;
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /**
+   * Scans {@code root} for declarations annotated with {@code @SuppressWarnings} with any of the
+   * given {@code prefixes} as a value.
+   */
+  static SuppressionIndex build(
+      CompilationUnitTree root,
+      SourcePositions positions,
+      TypeElement suppressWarnings,
+      ExecutableElement suppressWarningsValue,
+      Set<String> prefixes) {
+    IntervalCollector collector =
+        new IntervalCollector(root, positions, suppressWarnings, suppressWarningsValue, prefixes);
+    collector.scan(root, null);
+    return collector.build();
+  }
+
+  CompilationUnitTree root() {
+    return root;
+  }
+
+  /** Returns whether {@code tree} starts within a suppressed declaration in this index's root. */
+  boolean isSuppressed(Tree tree) {
+    if (starts.length == 0) {
+      return false;
+    }
+    long position = positions.getStartPosition(root, tree);
+    if (position < 0) {
+      return false;
+    }
+    // Find the last interval that starts at or before `position`.
+    int low = 0;
+    int high = starts.length - 1;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] <= position) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found >= 0 && position < ends[found];
+  }
+
+  private static final class IntervalCollector extends TreeScanner<Void, Void> {
+    private final CompilationUnitTree root;
+    private final SourcePositions positions;
+    private final TypeElement suppressWarnings;
+    private final ExecutableElement suppressWarningsValue;
+    private final Set<String> prefixes;
+
+    private long[] starts = new long[4];
+    private long[] ends = new long[4];
+    private int size;
+
+    IntervalCollector(
+        CompilationUnitTree root,
+        SourcePositions positions,
+        TypeElement suppressWarnings,
+        ExecutableElement suppressWarningsValue,
+        Set<String> prefixes) {
+      this.root = root;
+      this.positions = positions;
+      this.suppressWarnings = suppressWarnings;
+      this.suppressWarningsValue = suppressWarningsValue;
+      this.prefixes = prefixes;
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void p) {
+      return suppresses(tree.getModifiers()) ? record(tree) : super.visitClass(tree, p);
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void p) {
+      return suppresses(tree.getModifiers()) ? record(tree) : super.visitMethod(tree, p);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void p) {
+      return suppresses(tree.getModifiers()) ? record(tree) : super.visitVariable(tree, p);
+    }
+
+    private boolean suppresses(ModifiersTree modifiers) {
+      List<? extends AnnotationTree> annotations = modifiers.getAnnotations();
+      for (int i = 0; i < annotations.size(); i++) {
+        AnnotationTree annotation = annotations.get(i);
+        /*
+         * Looking at the element of the annotation type is cheap, since javac has already
+         * attributed it. Only for actual @SuppressWarnings annotations do we build a mirror and
+         * look at the values.
+         */
+        Element annotationType = elementFromTree(annotation.getAnnotationType());
+        if (suppressWarnings.equals(annotationType)
+            && hasPrefixValue(annotationFromAnnotationTree(annotation))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean hasPrefixValue(AnnotationMirror annotation) {
+      boolean[] isSuppression = new boolean[1];
+      new SimpleAnnotationValueVisitor8<Void, Void>() {
+        @Override
+        public Void visitString(String s, Void unused) {
+          isSuppression[0] |= prefixes.contains(s);
+          return null;
+        }
+
+        @Override
+        public Void visitArray(List<? extends AnnotationValue> vals, Void unused) {
+          vals.forEach(v -> v.accept(this, null));
+          return null;
+        }
+      }.visit(annotation.getElementValues().get(suppressWarningsValue));
+      return isSuppression[0];
+    }
+
+    /**
+     * Records the range of {@code tree}. We don't descend into it: Anything inside is already
+     * covered.
+     */
+    private Void record(Tree tree) {
+      long start = positions.getStartPosition(root, tree);
+      long end = positions.getEndPosition(root, tree);
+      if (start < 0 || end < start) {
+        return null;
+      }
+      if (size == starts.length) {
+        starts = copyOf(starts, size * 2);
+        ends = copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+      return null;
+    }
+
+    SuppressionIndex build() {
+      /*
+       * TreeScanner visits declarations in source order, and we don't record anything nested inside
+       * a recorded range, so the intervals should already be sorted and disjoint. But it costs
+       * little to make sure.
+       */
+      boolean sorted = true;
+      for (int i = 1; i < size && sorted; i++) {
+        sorted = starts[i - 1] < starts[i] && ends[i - 1] <= starts[i];
+      }
+      if (!sorted) {
+        sortAndMerge();
+      }
+      return new SuppressionIndex(root, positions, copyOf(starts, size), copyOf(ends, size));
+    }
+
+    private void sortAndMerge() {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+      long[] sortedStarts = new long[size];
+      long[] sortedEnds = new long[size];
+      int merged = 0;
+      for (int i : order) {
+        if (merged > 0 && starts[i] <= sortedEnds[merged - 1]) {
+          sortedEnds[merged - 1] = Math.max(sortedEnds[merged - 1], ends[i]);
+        } else {
+          sortedStarts[merged] = starts[i];
+          sortedEnds[merged] = ends[i];
+          merged++;
+        }
+      }
+      starts = sortedStarts;
+      ends = sortedEnds;
+      size = merged;
+    }
+  }
+}
@@ -15,32 +15,38 @@
 package com.google.jspecify.nullness;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.stream.Collectors.toList;
-import static org.checkerframework.javacutil.TreeUtils.annotationsFromTypeAnnotationTrees;
 import static org.checkerframework.javacutil.TreeUtils.elementFromUse;
 
-import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.MemberReferenceTree;
 import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
 import javax.lang.model.element.AnnotationMirror;
-import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
-import javax.lang.model.util.SimpleAnnotationValueVisitor8;
 import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
 import org.checkerframework.framework.qual.TypeUseLocation;
 import org.checkerframework.javacutil.AnnotationBuilder;
 
@@ -77,6 +83,11 @@ final class Util {
   final ExecutableElement mapGetElement;
   final ExecutableElement mapPutElement;
   final ExecutableElement mapRemoveElement;
+  final Optional<ExecutableElement> mapRemoveTwoArgElement;
+  final ExecutableElement mapClearElement;
+  final Optional<ExecutableElement> mapComputeElement;
+  final Optional<ExecutableElement> mapComputeIfPresentElement;
+  final Optional<ExecutableElement> mapMergeElement;
   final ExecutableElement navigableMapNavigableKeySetElement;
   final ExecutableElement navigableMapDescendingKeySetElement;
   final ExecutableElement objectsToStringTwoArgElement;
@@ -85,12 +96,49 @@ final class Util {
   final Optional<ExecutableElement> optionalFromJavaUtilElement;
   final Map<ExecutableElement, ExecutableElement> getterForSetter;
 
-  private final TypeMirror javaLangSuppressWarnings;
+  private final TypeElement javaLangSuppressWarningsElement;
   private final ExecutableElement suppressWarningsValueElement;
+  private final Trees trees;
+  private final Set<String> suppressWarningsPrefixes;
+  /** The index for the compilation unit that we were most recently asked about. */
+  private SuppressionIndex suppressionIndex;
 
-  Util(Elements elementUtils, Types types) {
+  /*
+   * Results of methodAndOverrides, keyed by the receiver's class and then by the method whose
+   * overrides we want. Computing a result requires walking every supertype of the receiver and
+   * calling Elements.overrides on every one of their methods, and NullSpecTransfer asks the same
+   * question (about AnnotatedElement.getAnnotation) for every isAnnotationPresent call it sees,
+   * usually about the same few classes, like Class and Method.
+   *
+   * Entries for classes that come from class files never change during a compilation, so we keep
+   * them for the whole compilation. Entries that depend on any class that we're compiling from
+   * source are tracked in sourceDependentOverrides so that clearSourceDependentOverrides can drop
+   * them after each top-level class is checked and when javac enters a new round's worth of
+   * sources. That way, they don't pile up over a large compilation.
+   */
+  private final Map<TypeElement, Map<ExecutableElement, List<ExecutableElement>>> overridesCache =
+      new HashMap<>();
+  private final Set<TypeElement> sourceDependentOverrides = new HashSet<>();
+
+  /*
+   * The building blocks of methodAndOverrides, which NullSpecVisitor also uses directly (for its
+   * ThreadLocal.initialValue check): the deduplicated supertype closure of each class, and each
+   * class's own methods indexed by name. With them, looking for overrides of a method touches only
+   * the same-named methods of each supertype, and each supertype only once.
+   *
+   * Like overridesCache, these are kept for the whole compilation, except that entries that involve
+   * classes being compiled from source are dropped by clearSourceDependentOverrides.
+   */
+  private final Map<TypeElement, List<TypeElement>> supertypeClosureCache = new HashMap<>();
+  private final Map<TypeElement, Map<String, List<ExecutableElement>>> methodsByNameCache =
+      new HashMap<>();
+  private final Set<TypeElement> sourceDependentSupertypeClosures = new HashSet<>();
+
+  Util(Elements elementUtils, Types types, Trees trees, Set<String> suppressWarningsPrefixes) {
     this.elementUtils = elementUtils;
     this.types = types;
+    this.trees = trees;
+    this.suppressWarningsPrefixes = suppressWarningsPrefixes;
 
     Elements e = elementUtils;
     /*
@@ -181,6 +229,13 @@ final class Util {
     mapGetElement = onlyExecutableWithName(javaUtilMapElement, "get");
     mapPutElement = onlyExecutableWithName(javaUtilMapElement, "put");
     mapRemoveElement = onlyOneArgExecutableWithName(javaUtilMapElement, "remove");
+    // The default methods may be missing under j2cl.
+    mapRemoveTwoArgElement = optionalOnlyTwoArgExecutableWithName(javaUtilMapElement, "remove");
+    mapClearElement = onlyExecutableWithName(javaUtilMapElement, "clear");
+    mapComputeElement = optionalOnlyExecutableWithName(javaUtilMapElement, "compute");
+    mapComputeIfPresentElement =
+        optionalOnlyExecutableWithName(javaUtilMapElement, "computeIfPresent");
+    mapMergeElement = optionalOnlyExecutableWithName(javaUtilMapElement, "merge");
 
     TypeElement javaUtilNavigableMapElement = e.getTypeElement("java.util.NavigableMap");
     navigableMapNavigableKeySetElement =
@@ -219,8 +274,7 @@ final class Util {
     }
     this.getterForSetter = unmodifiableMap(getterForSetter);
 
-    TypeElement javaLangSuppressWarningsElement = e.getTypeElement("java.lang.SuppressWarnings");
-    javaLangSuppressWarnings = javaLangSuppressWarningsElement.asType();
+    javaLangSuppressWarningsElement = e.getTypeElement("java.lang.SuppressWarnings");
     suppressWarningsValueElement = onlyExecutableWithName(javaLangSuppressWarningsElement, "value");
 
     /*
@@ -248,6 +302,114 @@ final class Util {
         || isOrOverrides(overrider, c);
   }
 
+  /**
+   * Returns {@code method} and all methods that override it in {@code type} and its transitive
+   * supertypes, without duplicates. The result is cached for the rest of the compilation (or, if it
+   * depends on source classes, until {@link #clearSourceDependentOverrides}).
+   */
+  List<ExecutableElement> methodAndOverrides(TypeElement type, ExecutableElement method) {
+    Map<ExecutableElement, List<ExecutableElement>> overridesByMethod =
+        overridesCache.computeIfAbsent(type, t -> new HashMap<>());
+    List<ExecutableElement> result = overridesByMethod.get(method);
+    if (result == null) {
+      result = computeMethodAndOverrides(type, method);
+      overridesByMethod.put(method, result);
+    }
+    return result;
+  }
+
+  private List<ExecutableElement> computeMethodAndOverrides(
+      TypeElement type, ExecutableElement method) {
+    String name = method.getSimpleName().toString();
+    List<ExecutableElement> result = new ArrayList<>();
+    for (TypeElement supertype : supertypeClosure(type)) {
+      if (isFromSource(supertype)) {
+        sourceDependentOverrides.add(type);
+      }
+      for (ExecutableElement candidate : methodsNamed(supertype, name)) {
+        /*
+         * TODO(cpovirk): It would be more correct to pass the corresponding `TypeElement supertype`
+         * to Elements.overrides.
+         */
+        if (isOrOverrides(candidate, method)) {
+          result.add(candidate);
+        }
+      }
+    }
+    return unmodifiableList(result);
+  }
+
+  /**
+   * Returns {@code type} and all its transitive supertypes, without duplicates, with {@code type}
+   * first. The result is cached like {@link #methodAndOverrides}.
+   */
+  List<TypeElement> supertypeClosure(TypeElement type) {
+    List<TypeElement> result = supertypeClosureCache.get(type);
+    if (result == null) {
+      Set<TypeElement> supertypes = new LinkedHashSet<>();
+      collectAllSupertypes(type, supertypes);
+      for (TypeElement supertype : supertypes) {
+        if (isFromSource(supertype)) {
+          sourceDependentSupertypeClosures.add(type);
+          break;
+        }
+      }
+      result = unmodifiableList(new ArrayList<>(supertypes));
+      supertypeClosureCache.put(type, result);
+    }
+    return result;
+  }
+
+  /** Returns the methods and constructors declared directly in {@code type} with {@code name}. */
+  List<ExecutableElement> methodsNamed(TypeElement type, String name) {
+    Map<String, List<ExecutableElement>> methodsByName = methodsByNameCache.get(type);
+    if (methodsByName == null) {
+      methodsByName = new HashMap<>();
+      for (Element enclosed : type.getEnclosedElements()) {
+        if (enclosed instanceof ExecutableElement) {
+          methodsByName
+              .computeIfAbsent(enclosed.getSimpleName().toString(), n -> new ArrayList<>())
+              .add((ExecutableElement) enclosed);
+        }
+      }
+      methodsByNameCache.put(type, methodsByName);
+    }
+    return methodsByName.getOrDefault(name, emptyList());
+  }
+
+  private void collectAllSupertypes(TypeElement type, Set<TypeElement> result) {
+    if (!result.add(type)) {
+      return;
+    }
+    for (TypeMirror supertype : types.directSupertypes(type.asType())) {
+      if (supertype instanceof DeclaredType) {
+        collectAllSupertypes((TypeElement) ((DeclaredType) supertype).asElement(), result);
+      }
+    }
+  }
+
+  /**
+   * Drops cached {@link #methodAndOverrides} results that depend on classes that are being compiled
+   * from source. javac may give those classes new members in a later round, while classes from
+   * class files can't change. NullSpecChecker also calls this after checking each top-level class,
+   * so that the entries for source classes don't accumulate for the whole compilation.
+   */
+  void clearSourceDependentOverrides() {
+    overridesCache.keySet().removeAll(sourceDependentOverrides);
+    sourceDependentOverrides.clear();
+    supertypeClosureCache.keySet().removeAll(sourceDependentSupertypeClosures);
+    sourceDependentSupertypeClosures.clear();
+    methodsByNameCache.keySet().removeIf(Util::isFromSource);
+  }
+
+  private static boolean isFromSource(TypeElement type) {
+    if (!(type instanceof ClassSymbol)) {
+      return true; // be conservative
+    }
+    JavaFileObject classfile = ((ClassSymbol) type).classfile;
+    return classfile == null || classfile.getKind() == JavaFileObject.Kind.SOURCE;
+  }
+
   static boolean nameMatches(Element element, String name) {
     return element.getSimpleName().contentEquals(name);
   }
@@ -321,6 +483,11 @@ final class Util {
     return optionalOnlyExecutableElement(type, name, m -> m.getParameters().size() == 1);
   }
 
+  private static Optional<ExecutableElement> optionalOnlyTwoArgExecutableWithName(
+      TypeElement type, String name) {
+    return optionalOnlyExecutableElement(type, name, m -> m.getParameters().size() == 2);
+  }
+
   private static Optional<ExecutableElement> optionalOnlyOneArgExecutableWithName(
       Optional<TypeElement> type, String name) {
     return type.flatMap(e -> optionalOnlyOneArgExecutableWithName(e, name));
@@ -370,35 +537,27 @@ final class Util {
                   ElementKind.RESOURCE_VARIABLE,
                   ElementKind.EXCEPTION_PARAMETER)));
 
-  boolean hasSuppressWarningsNullness(List<? extends AnnotationTree> annotations) {
-    for (AnnotationMirror annotation : annotationsFromTypeAnnotationTrees(annotations)) {
-      if (isSuppressWarningsNullness(annotation)) {
-        return true;
-      }
+  /**
+   * Returns whether {@code tree}, which must be in {@code root}, is inside a declaration annotated
+   * with {@code @SuppressWarnings("nullness")} (or with another of the checker's suppression
+   * prefixes). The first query about a given compilation unit builds its {@link SuppressionIndex}.
+   */
+  boolean isSuppressed(CompilationUnitTree root, Tree tree) {
+    if (suppressionIndex == null || suppressionIndex.root() != root) {
+      suppressionIndex =
+          SuppressionIndex.build(
+              root,
+              trees.getSourcePositions(),
+              javaLangSuppressWarningsElement,
+              suppressWarningsValueElement,
+              suppressWarningsPrefixes);
     }
-    return false;
+    return suppressionIndex.isSuppressed(tree);
   }
 
-  private boolean isSuppressWarningsNullness(AnnotationMirror annotation) {
-    if (!types.isSameType(
-        annotation.getAnnotationType().asElement().asType(), javaLangSuppressWarnings)) {
-      return false;
-    }
-    boolean[] isSuppression = new boolean[1];
-    new SimpleAnnotationValueVisitor8<Void, Void>() {
-      @Override
-      public Void visitString(String s, Void unused) {
-        isSuppression[0] |= s.equals("nullness");
-        return null;
-      }
-
-      @Override
-      public Void visitArray(List<? extends AnnotationValue> vals, Void unused) {
-        vals.forEach(v -> v.accept(this, null));
-        return null;
-      }
-    }.visit(annotation.getElementValues().get(suppressWarningsValueElement));
-    return isSuppression[0];
+  /** Drops the index for the most recent compilation unit, which refers to that unit's trees. */
+  void clearSuppressionIndex() {
+    suppressionIndex = null;
   }
 
   private static void put(
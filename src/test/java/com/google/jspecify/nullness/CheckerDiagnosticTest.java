@@ -0,0 +1,87 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+import javax.tools.Diagnostic;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CheckerDiagnosticTest {
+  @Test
+  public void jspecifyType_simple() {
+    assertEquals("String!", CheckerDiagnostic.jspecifyType("String"));
+    assertEquals("String?", CheckerDiagnostic.jspecifyType("String?"));
+    assertEquals("T*", CheckerDiagnostic.jspecifyType("T*"));
+  }
+
+  @Test
+  public void jspecifyType_movesSigilBeforeTypeArguments() {
+    assertEquals("List?<String!>", CheckerDiagnostic.jspecifyType("List<String>?"));
+    assertEquals("List!<String?>", CheckerDiagnostic.jspecifyType("List<String?>"));
+  }
+
+  @Test
+  public void jspecifyType_splitsTypeArgumentsAtTopLevelCommasOnly() {
+    assertEquals(
+        "Map!<String?,Map?<Integer!,List!<T*>>>",
+        CheckerDiagnostic.jspecifyType("Map<String?, Map<Integer, List<T*>>?>"));
+    assertEquals(
+        "Pair!<Map!<A!,B?>,C!>", CheckerDiagnostic.jspecifyType("Pair<Map<A, B?>, C>"));
+  }
+
+  @Test
+  public void jspecifyType_keepsUnrecognizedTypeArguments() {
+    assertEquals(
+        "List!<? extends Number>", CheckerDiagnostic.jspecifyType("List<? extends Number>"));
+  }
+
+  @Test
+  public void jspecifyType_keepsUnrecognizedTypes() {
+    assertEquals("List<String", CheckerDiagnostic.jspecifyType("List<String"));
+    assertEquals("", CheckerDiagnostic.jspecifyType(""));
+  }
+
+  @Test
+  public void isCannotConvert() {
+    assertTrue(diagnostic("assignment", "String?", "String!").isCannotConvert());
+    assertEquals("String?", diagnostic("assignment", "String?", "String!").sourceType());
+    assertEquals("String!", diagnostic("assignment", "String?", "String!").sinkType());
+    assertFalse(diagnostic("assignment", "String?").isCannotConvert());
+    assertFalse(diagnostic("dereference.of.nullable", "x", "y").isCannotConvert());
+  }
+
+  @Test
+  public void cannotConvertKeys_matchConformanceTest() throws ReflectiveOperationException {
+    Field keys =
+        Class.forName("tests.ConformanceTest$DetailMessageReportedFact")
+            .getDeclaredField("CANNOT_CONVERT_KEYS");
+    keys.setAccessible(true);
+    assertEquals(new HashSet<>((Set<?>) keys.get(null)), CheckerDiagnostic.CANNOT_CONVERT_KEYS);
+  }
+
+  private static CheckerDiagnostic diagnostic(String messageKey, Object... arguments) {
+    return new CheckerDiagnostic(
+        Diagnostic.Kind.ERROR, "Foo.java", 0, 1, 1, 1, messageKey, "message", arguments);
+  }
+}
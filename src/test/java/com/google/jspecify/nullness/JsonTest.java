@@ -0,0 +1,62 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class JsonTest {
+  @Test
+  public void appendString_plain() {
+    assertEquals("\"List<String?>\"", string("List<String?>"));
+  }
+
+  @Test
+  public void appendString_empty() {
+    assertEquals("\"\"", string(""));
+  }
+
+  @Test
+  public void appendString_escapesQuotesAndBackslashes() {
+    assertEquals("\"a \\\"b\\\" c\\\\d\"", string("a \"b\" c\\d"));
+  }
+
+  @Test
+  public void appendString_escapesControlCharacters() {
+    assertEquals(
+        "\"1\\n2\\r3\\t4\\u00005\\u001f\"", string("1\n2\r3\t4" + (char) 0 + "5" + (char) 0x1f));
+  }
+
+  @Test
+  public void appendString_keepsNonAscii() {
+    assertEquals("\"caf\u00e9 \u2603\"", string("caf\u00e9 \u2603"));
+  }
+
+  @Test
+  public void appendName() {
+    StringBuilder out = new StringBuilder("{");
+    Json.appendName(out, "a").append(1);
+    Json.appendName(out, "b\"").append(2);
+    assertEquals("{\"a\":1,\"b\\\"\":2", out.toString());
+  }
+
+  private static String string(String value) {
+    return Json.appendString(new StringBuilder(), value).toString();
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MetricsExporterTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void prometheusFile() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("metrics.prom");
+
+    new MetricsExporter.PrometheusFile(file).export(metrics());
+
+    assertEquals(
+        "# HELP nullness_dataflow_node_visits_total"
+            + " Times the dataflow analysis ran the transfer function.\n"
+            + "# TYPE nullness_dataflow_node_visits_total counter\n"
+            + "nullness_dataflow_node_visits_total 7\n"
+            + "# HELP nullness_diagnostics_total Diagnostics reported, by message key.\n"
+            + "# TYPE nullness_diagnostics_total counter\n"
+            + "nullness_diagnostics_total{key=\"argument\"} 1\n"
+            + "nullness_diagnostics_total{key=\"return\"} 2\n"
+            + "# HELP nullness_null_exclusive_queries_total"
+            + " Calls to isNullExclusiveUnderEveryParameterization, in either world.\n"
+            + "# TYPE nullness_null_exclusive_queries_total counter\n"
+            + "nullness_null_exclusive_queries_total 0\n"
+            + "# HELP nullness_return_summary_refinements_total"
+            + " Method invocations whose result NullSpecTransfer refined from a return summary.\n"
+            + "# TYPE nullness_return_summary_refinements_total counter\n"
+            + "nullness_return_summary_refinements_total 0\n"
+            + "# HELP nullness_subtype_queries_total"
+            + " Calls to TypeHierarchy.isSubtype, in either world.\n"
+            + "# TYPE nullness_subtype_queries_total counter\n"
+            + "nullness_subtype_queries_total 0\n"
+            + "# HELP nullness_class_checking_nanos Time spent checking each top-level class.\n"
+            + "# TYPE nullness_class_checking_nanos histogram\n"
+            + "nullness_class_checking_nanos_bucket{le=\"+Inf\"} 0\n"
+            + "nullness_class_checking_nanos_sum 0\n"
+            + "nullness_class_checking_nanos_count 0\n"
+            + "# HELP nullness_dataflow_node_visits_per_analysis"
+            + " Transfer-function runs per method, lambda, or initializer that dataflow analyzed.\n"
+            + "# TYPE nullness_dataflow_node_visits_per_analysis histogram\n"
+            + "nullness_dataflow_node_visits_per_analysis_bucket{le=\"2\"} 1\n"
+            + "nullness_dataflow_node_visits_per_analysis_bucket{le=\"3\"} 1\n"
+            + "nullness_dataflow_node_visits_per_analysis_bucket{le=\"4\"} 1\n"
+            + "nullness_dataflow_node_visits_per_analysis_bucket{le=\"5\"} 3\n"
+            + "nullness_dataflow_node_visits_per_analysis_bucket{le=\"+Inf\"} 3\n"
+            + "nullness_dataflow_node_visits_per_analysis_sum 12\n"
+            + "nullness_dataflow_node_visits_per_analysis_count 3\n",
+        new String(Files.readAllBytes(file), UTF_8));
+  }
+
+  @Test
+  public void jsonFile() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("metrics.json");
+
+    new MetricsExporter.JsonFile(file).export(metrics());
+
+    assertEquals(
+        "{\"counters\":["
+            + "{\"name\":\"nullness_dataflow_node_visits\",\"value\":7},"
+            + "{\"name\":\"nullness_diagnostics\",\"labels\":{\"key\":\"argument\"},\"value\":1},"
+            + "{\"name\":\"nullness_diagnostics\",\"labels\":{\"key\":\"return\"},\"value\":2},"
+            + "{\"name\":\"nullness_null_exclusive_queries\",\"value\":0},"
+            + "{\"name\":\"nullness_return_summary_refinements\",\"value\":0},"
+            + "{\"name\":\"nullness_subtype_queries\",\"value\":0}],"
+            + "\"histograms\":["
+            + "{\"name\":\"nullness_class_checking_nanos\",\"count\":0,\"sum\":0,\"buckets\":[]},"
+            + "{\"name\":\"nullness_dataflow_node_visits_per_analysis\",\"count\":3,\"sum\":12,"
+            + "\"buckets\":[{\"le\":2,\"count\":1},{\"le\":5,\"count\":2}]}]}\n",
+        new String(Files.readAllBytes(file), UTF_8));
+  }
+
+  private static Metrics metrics() {
+    Metrics metrics = new Metrics();
+    for (int i = 0; i < 7; i++) {
+      metrics.dataflowNodeVisits.increment();
+    }
+    metrics.diagnostic("return");
+    metrics.diagnostic("argument");
+    metrics.diagnostic("return");
+    metrics.dataflowNodeVisitsPerAnalysis.record(2);
+    metrics.dataflowNodeVisitsPerAnalysis.record(5);
+    metrics.dataflowNodeVisitsPerAnalysis.record(5);
+    return metrics;
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.jspecify.nullness.Metrics.Histogram;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MetricsTest {
+  @Test
+  public void histogram_smallValuesHaveTheirOwnBuckets() {
+    for (int value = 0; value < 4; value++) {
+      assertEquals(value, Histogram.bucketIndex(value));
+      assertEquals(value, Histogram.bucketUpperBound(value));
+    }
+  }
+
+  @Test
+  public void histogram_bucketsSplitEachPowerOfTwoInFour() {
+    assertEquals(4, Histogram.bucketIndex(4));
+    assertEquals(7, Histogram.bucketIndex(7));
+    assertEquals(8, Histogram.bucketIndex(8));
+    assertEquals(8, Histogram.bucketIndex(9));
+    assertEquals(9, Histogram.bucketIndex(10));
+    assertEquals(22, Histogram.bucketIndex(96));
+    assertEquals(22, Histogram.bucketIndex(111));
+    assertEquals(23, Histogram.bucketIndex(112));
+    assertEquals(9, Histogram.bucketUpperBound(8));
+    assertEquals(111, Histogram.bucketUpperBound(22));
+  }
+
+  @Test
+  public void histogram_everyValueIsAtMostItsBucketUpperBound() {
+    long[] values = {4, 5, 63, 64, 65, 1000, 1 << 20, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = Histogram.bucketIndex(value);
+      assertEquals(index, Histogram.bucketIndex(Histogram.bucketUpperBound(index)));
+      assertEquals(index - 1, Histogram.bucketIndex(Histogram.bucketUpperBound(index - 1)));
+      assertTrue(value <= Histogram.bucketUpperBound(index));
+      assertTrue(value > Histogram.bucketUpperBound(index - 1));
+    }
+    assertEquals(Histogram.BUCKETS - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.BUCKETS - 1));
+  }
+
+  @Test
+  public void histogram_quantiles() {
+    Histogram histogram = new Metrics().histogram("test", "A test histogram.");
+    assertEquals(0, histogram.quantileUpperBound(0.5));
+    for (int i = 0; i < 9; i++) {
+      histogram.record(1);
+    }
+    histogram.record(100);
+    histogram.record(-5);
+    assertEquals(11, histogram.count());
+    assertEquals(109, histogram.sum());
+    assertEquals(1, histogram.quantileUpperBound(0.5));
+    assertEquals(1, histogram.quantileUpperBound(0.9));
+    assertEquals(111, histogram.quantileUpperBound(0.99));
+  }
+
+  @Test
+  public void counters_sortedByNameAndLabel() {
+    Metrics metrics = new Metrics();
+    metrics.diagnostic("return");
+    metrics.diagnostic("argument");
+    metrics.diagnostic("return");
+    metrics.subtypeQueries.increment();
+    StringBuilder counters = new StringBuilder();
+    for (Metrics.Counter counter : metrics.counters()) {
+      counters.append(counter.name).append(' ').append(counter.labelValue);
+      counters.append(' ').append(counter.get()).append('\n');
+    }
+    assertEquals(
+        "dataflow_node_visits null 0\n"
+            + "diagnostics argument 1\n"
+            + "diagnostics return 2\n"
+            + "null_exclusive_queries null 0\n"
+            + "return_summary_refinements null 0\n"
+            + "subtype_queries null 1\n",
+        counters.toString());
+  }
+
+  @Test
+  public void disabled_recordsNothing() {
+    Metrics.DISABLED.diagnostic("return");
+    Metrics.DISABLED.subtypeQueries.increment();
+    Metrics.DISABLED.classCheckingNanos.record(5);
+    assertEquals(0, Metrics.DISABLED.counters().size());
+    assertEquals(0, Metrics.DISABLED.histograms().size());
+    assertEquals(0, Metrics.DISABLED.subtypeQueries.get());
+  }
+}
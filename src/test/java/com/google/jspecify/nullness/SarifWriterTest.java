@@ -0,0 +1,104 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.jspecify.nullness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import javax.tools.Diagnostic;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SarifWriterTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void merge_renumbersRulesAndKeepsResults() throws IOException {
+    Path first = temporaryFolder.getRoot().toPath().resolve("first.sarif");
+    try (SarifWriter writer = new SarifWriter(first, messages("argument", "return"))) {
+      writer.write(diagnostic("return", "first return"));
+    }
+    Path second = temporaryFolder.getRoot().toPath().resolve("second.sarif");
+    try (SarifWriter writer = new SarifWriter(second, messages("assignment", "return"))) {
+      writer.write(diagnostic("assignment", "second assignment"));
+      writer.write(diagnostic("return", "second return"));
+    }
+    Path merged = temporaryFolder.getRoot().toPath().resolve("merged.sarif");
+
+    SarifWriter.merge(Arrays.asList(first, second), merged);
+
+    List<String> lines = Files.readAllLines(merged, UTF_8);
+    assertEquals(9, lines.size());
+    assertTrue(lines.get(1), lines.get(1).startsWith("{\"id\":\"argument\","));
+    assertTrue(lines.get(2), lines.get(2).startsWith("{\"id\":\"return\","));
+    assertTrue(lines.get(3), lines.get(3).startsWith("{\"id\":\"assignment\","));
+    assertEquals("]}},\"results\":[", lines.get(4));
+    assertTrue(
+        lines.get(5),
+        lines.get(5).startsWith("{\"ruleId\":\"return\",\"ruleIndex\":1,\"level\":\"error\","));
+    assertTrue(lines.get(5), lines.get(5).contains("\"text\":\"first return\""));
+    assertTrue(
+        lines.get(6),
+        lines.get(6).startsWith("{\"ruleId\":\"assignment\",\"ruleIndex\":2,\"level\":\"error\","));
+    assertTrue(lines.get(6), lines.get(6).contains("\"text\":\"second assignment\""));
+    assertTrue(
+        lines.get(7),
+        lines.get(7).startsWith("{\"ruleId\":\"return\",\"ruleIndex\":1,\"level\":\"error\","));
+    assertTrue(lines.get(7), lines.get(7).contains("\"text\":\"second return\""));
+    assertEquals("]}]}", lines.get(8));
+  }
+
+  @Test
+  public void merge_truncatedInput() throws IOException {
+    Path complete = temporaryFolder.getRoot().toPath().resolve("complete.sarif");
+    try (SarifWriter writer = new SarifWriter(complete, messages("return"))) {
+      writer.write(diagnostic("return", "message"));
+    }
+    List<String> lines = Files.readAllLines(complete, UTF_8);
+    Path truncated = temporaryFolder.getRoot().toPath().resolve("truncated.sarif");
+    Files.write(truncated, lines.subList(0, lines.size() - 1), UTF_8);
+    Path merged = temporaryFolder.getRoot().toPath().resolve("merged.sarif");
+
+    IOException e =
+        assertThrows(
+            IOException.class, () -> SarifWriter.merge(Arrays.asList(complete, truncated), merged));
+    assertTrue(e.getMessage(), e.getMessage().contains(truncated.toString()));
+  }
+
+  private static Properties messages(String... keys) {
+    Properties messages = new Properties();
+    for (String key : keys) {
+      messages.setProperty(key, key + " message");
+    }
+    return messages;
+  }
+
+  private static CheckerDiagnostic diagnostic(String messageKey, String message) {
+    return new CheckerDiagnostic(
+        Diagnostic.Kind.ERROR, "Foo.java", 10, 15, 2, 3, messageKey, message, new Object[0]);
+  }
+}
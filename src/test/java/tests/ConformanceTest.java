@@ -18,17 +18,25 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static java.util.Objects.requireNonNull;
 import static java.util.Objects.requireNonNullElse;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.stream.Collectors.joining;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.jspecify.nullness.NullSpecChecker;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -39,9 +47,12 @@ import org.checkerframework.framework.test.TestUtilities;
 import org.checkerframework.framework.test.TypecheckExecutor;
 import org.checkerframework.framework.test.TypecheckResult;
 import org.checkerframework.framework.test.diagnostics.DiagnosticKind;
+import org.checkerframework.framework.test.diagnostics.TestDiagnostic;
 import org.jspecify.annotations.Nullable;
+import org.jspecify.conformance.CachingAnalyzer;
 import org.jspecify.conformance.ConformanceTestRunner;
 import org.jspecify.conformance.ExpectedFact;
+import org.jspecify.conformance.ForkedAnalyzer;
 import org.jspecify.conformance.ReportedFact;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -62,6 +73,20 @@ import org.junit.runners.JUnit4;
  *   <li>Do the same, but for {@code JSpecifyConformanceTest.samples.tests} and {@code
  *       JSpecifyConformanceTest.samples.report}, for running the conformance tests on the JSpecify
  *       samples directory.
+ *   <li>Optionally, set the system property {@code JSpecifyConformanceTest.threads} to the number
+ *       of groups of test files to analyze at once. The default is 1.
+ *   <li>Optionally, set the system property {@code JSpecifyConformanceTest.analyzer} to {@code
+ *       warm} to analyze every group of test files with the same compiler and file manager. See
+ *       {@link WarmCompilerAnalyzer}. Set it to {@code forked} to analyze each group in one of a
+ *       pool of {@code JSpecifyConformanceTest.threads} worker JVMs, so that a group that crashes
+ *       or hangs the checker fails only that group. See {@link ForkedAnalyzer}. The default, {@code
+ *       fresh}, sets up a new {@link TypecheckExecutor} for each group.
+ *   <li>Optionally, set the system property {@code JSpecifyConformanceTest.workerTimeoutSeconds}
+ *       to the number of seconds a worker JVM may spend analyzing one group before it is killed.
+ *       The default is 600.
+ *   <li>Optionally, set the system property {@code JSpecifyConformanceTest.cache} to a directory in
+ *       which to cache the facts reported for each group of test files, so that only groups that
+ *       have changed since an earlier run are analyzed again. See {@link CachingAnalyzer}.
  * </ul>
  *
  * <p>The test can run in one of three modes, depending on the value of the {@code
@@ -69,18 +94,23 @@ import org.junit.runners.JUnit4;
  *
  * <dl>
  *   <dt>{@code compare} or empty
- *   <dd>Compare the analysis to the stored report, and fail if anything has changed. Note that
- *       failure isn't always bad! If an assertion used to fail and now passes, this test will
- *       "fail".
+ *   <dd>Compare the analysis to the stored report, and fail at the first line that has changed.
+ *       Note that failure isn't always bad! If an assertion used to fail and now passes, this test
+ *       will "fail".
  *   <dt>{@code write}
  *   <dd>Write the analysis to the report file. Always passes.
  *   <dt>{@code details}
  *   <dd>Fail if any assertion fails. Report details of unexpected facts.
  * </dl>
+ *
+ * <p>Set the {@code JSPECIFY_CONFORMANCE_TEST_TIMINGS} environment variable to {@code write} to
+ * record how long each group of test files took to analyze in a {@code *-timings.json} file next
+ * to each report, or to {@code compare} to fail if any group got slower than the recorded timings
+ * allow. See {@link ConformanceTestRunner#checkConformance}.
  */
 @RunWith(JUnit4.class)
 public final class ConformanceTest {
-  private static final ImmutableList<String> OPTIONS =
+  static final ImmutableList<String> OPTIONS =
       ImmutableList.of(
           "-AassumePure",
           "-Adetailedmsgtext",
@@ -95,8 +125,105 @@ public final class ConformanceTest {
           .map(Paths::get)
           .collect(toImmutableList());
 
+  private static final int THREADS = Integer.getInteger("JSpecifyConformanceTest.threads", 1);
+
   private final ConformanceTestRunner conformanceTestRunner =
-      new ConformanceTestRunner(ConformanceTest::analyze);
+      THREADS > 1
+          ? new ConformanceTestRunner(
+              analyzer(),
+              newFixedThreadPool(
+                  THREADS,
+                  new ThreadFactoryBuilder()
+                      .setDaemon(true)
+                      .setNameFormat("conformance-test-%d")
+                      .build()))
+          : new ConformanceTestRunner(analyzer());
+
+  private static ConformanceTestRunner.Analyzer analyzer() {
+    String cacheDirectory = System.getProperty("JSpecifyConformanceTest.cache");
+    if (cacheDirectory == null) {
+      return uncachedAnalyzer();
+    }
+    try {
+      return new CachingAnalyzer(
+          uncachedAnalyzer(),
+          new DetailMessageCodec(),
+          Paths.get(cacheDirectory),
+          // The checker, the Checker Framework, and this test's own code are all on the classpath.
+          classpath(),
+          ImmutableList.<String>builder()
+              .addAll(OPTIONS)
+              .add("java.version=" + System.getProperty("java.version"))
+              .build());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ImmutableList<Path> classpath() {
+    return Splitter.on(File.pathSeparatorChar)
+        .omitEmptyStrings()
+        .splitToStream(System.getProperty("java.class.path"))
+        .map(Paths::get)
+        .collect(toImmutableList());
+  }
+
+  private static ConformanceTestRunner.Analyzer uncachedAnalyzer() {
+    String analyzer = System.getProperty("JSpecifyConformanceTest.analyzer", "fresh");
+    switch (analyzer) {
+      case "fresh":
+        return ConformanceTest::analyze;
+      case "warm":
+        return WARM_ANALYZER.get();
+      case "forked":
+        return FORKED_ANALYZER.get();
+      default:
+        throw new IllegalArgumentException(
+            "JSpecifyConformanceTest.analyzer must be \"fresh\", \"warm\", or \"forked\", but it"
+                + " was \""
+                + analyzer
+                + "\".");
+    }
+  }
+
+  /*
+   * JUnit creates a new ConformanceTest for each test method, but both methods can share one
+   * compiler and file manager, which the analyzer closes when the JVM exits.
+   */
+  private static final Supplier<WarmCompilerAnalyzer> WARM_ANALYZER =
+      Suppliers.memoize(() -> new WarmCompilerAnalyzer(OPTIONS));
+
+  /*
+   * JUnit creates a new ConformanceTest for each test method, but both methods can share one pool
+   * of workers. The workers exit when they see the end of their input, so they don't outlive this
+   * JVM.
+   */
+  private static final Supplier<ForkedAnalyzer> FORKED_ANALYZER =
+      Suppliers.memoize(
+          () ->
+              new ForkedAnalyzer(
+                  FreshAnalyzer.class,
+                  DetailMessageCodec.class,
+                  THREADS,
+                  Duration.ofSeconds(
+                      Integer.getInteger("JSpecifyConformanceTest.workerTimeoutSeconds", 600)),
+                  classpath(),
+                  /*
+                   * The checker needs the same access to javac internals in the workers as it has
+                   * here.
+                   */
+                  ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                      .filter(argument -> argument.startsWith("--add-"))
+                      .collect(toImmutableList())));
+
+  /** Analyzes a group of files in a worker JVM the same way the {@code fresh} analyzer does. */
+  static final class FreshAnalyzer implements ConformanceTestRunner.Analyzer {
+    @Override
+    public Iterable<ReportedFact> analyze(
+        Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+      return ConformanceTest.analyze(testDirectory, files, testDeps);
+    }
+  }
 
   @Test
   public void conformanceTests() throws IOException {
@@ -141,13 +268,39 @@ public final class ConformanceTest {
             OPTIONS,
             TestUtilities.getShouldEmitDebugInfo());
     TypecheckResult result = new TypecheckExecutor().runTest(config);
-    return result.getUnexpectedDiagnostics().stream()
-        .map(d -> DetailMessage.parse(d.getMessage(), testDirectory))
+    return reportedFacts(
+        result.getUnexpectedDiagnostics().stream().map(TestDiagnostic::getMessage), testDirectory);
+  }
+
+  /**
+   * Returns the facts in diagnostic messages of the form {@code file:line: kind: message}, where
+   * {@code message} is in the {@code -Adetailedmsgtext} format.
+   */
+  static ImmutableSet<ReportedFact> reportedFacts(
+      Stream<String> diagnosticMessages, Path testDirectory) {
+    return diagnosticMessages
+        .map(message -> DetailMessage.parse(message, testDirectory))
         .filter(Objects::nonNull)
         .map(DetailMessageReportedFact::new)
         .collect(toImmutableSet());
   }
 
+  /**
+   * Caches a {@link DetailMessageReportedFact}, or sends it from a worker JVM, as the diagnostic it
+   * was parsed from.
+   */
+  static final class DetailMessageCodec implements CachingAnalyzer.FactCodec {
+    @Override
+    public String encode(ReportedFact fact) {
+      return ((DetailMessageReportedFact) fact).detailMessage.toParseableString();
+    }
+
+    @Override
+    public ReportedFact decode(String text) {
+      return new DetailMessageReportedFact(requireNonNull(DetailMessage.parse(text, null)));
+    }
+  }
+
   /** A {@link ReportedFact} parsed from a Checker Framework {@link DetailMessage}. */
   static final class DetailMessageReportedFact extends ReportedFact {
 
@@ -55,6 +55,9 @@ final class DetailMessage extends TestDiagnostic {
   /** The line number (1-based) of the diagnostic in the {@link #file}. */
   final int lineNumber;
 
+  /** The whole message, from which the other fields were parsed. */
+  private final String message;
+
   /** The message key for the user-visible text message that is emitted. */
   final String messageKey;
 
@@ -94,7 +97,8 @@ final class DetailMessage extends TestDiagnostic {
     Matcher detailsMatcher = DETAIL_MESSAGE_PATTERN.matcher(message);
     if (!detailsMatcher.matches()) {
       // Return a message with no key or parts.
-      return new DetailMessage(file, lineNumber, kind, "", ImmutableList.of(), null, null, message);
+      return new DetailMessage(
+          file, lineNumber, kind, message, "", ImmutableList.of(), null, null, message);
     }
 
     int messagePartCount = parseInt(detailsMatcher.group("messagePartCount"));
@@ -114,6 +118,7 @@ final class DetailMessage extends TestDiagnostic {
         file,
         lineNumber,
         kind,
+        message,
         detailsMatcher.group("messageKey"),
         messageArguments,
         intOrNull(offsetsMatcher.group("start")),
@@ -129,6 +134,7 @@ final class DetailMessage extends TestDiagnostic {
       Path file,
       int lineNumber,
       DiagnosticKind diagnosticKind,
+      String message,
       String messageKey,
       ImmutableList<String> messageArguments,
       Integer offsetStart,
@@ -137,6 +143,7 @@ final class DetailMessage extends TestDiagnostic {
     super(file.toString(), lineNumber, diagnosticKind, readableMessage, false, true);
     this.file = file;
     this.lineNumber = lineNumber;
+    this.message = message;
     this.messageKey = messageKey;
     this.messageArguments = messageArguments;
     this.offsetStart = offsetStart;
@@ -144,6 +151,14 @@ final class DetailMessage extends TestDiagnostic {
     this.readableMessage = readableMessage;
   }
 
+  /**
+   * Returns this diagnostic in the form that {@link #parse} reads, with the {@link #file} as it is
+   * here, so that parsing the result with no root directory returns an equal object.
+   */
+  String toParseableString() {
+    return String.format("%s:%d: %s: %s", file, lineNumber, getKind().parseString, message);
+  }
+
   /** The last part of the {@link #file}. */
   String getFileName() {
     return file.getFileName().toString();
@@ -41,6 +41,42 @@ abstract class NullSpecTest extends CheckerFrameworkPerDirectoryTest {
     }
   }
 
+  /** A test of the summaries that the {@code summarizeReturns} option computes. */
+  public static class ReturnSummaries extends NullSpecTest {
+    public ReturnSummaries(List<File> testFiles) {
+      super(testFiles, false, "-AsummarizeReturns");
+    }
+
+    @Parameters
+    public static String[] getTestDirs() {
+      return new String[] {"returnSummaries"};
+    }
+  }
+
+  /** A test that the {@code apiOnly} option checks signatures but not implementation code. */
+  public static class ApiOnly extends NullSpecTest {
+    public ApiOnly(List<File> testFiles) {
+      super(testFiles, false, "-AapiOnly");
+    }
+
+    @Parameters
+    public static String[] getTestDirs() {
+      return new String[] {"apiOnly"};
+    }
+  }
+
+  /** A test of the classes that the {@code skipGenerated} and {@code skipPackages} options skip. */
+  public static class Skipping extends NullSpecTest {
+    public Skipping(List<File> testFiles) {
+      super(testFiles, false, "-AskipGenerated", "-AskipPackages=com.foo");
+    }
+
+    @Parameters
+    public static String[] getTestDirs() {
+      return new String[] {"skipping"};
+    }
+  }
+
   /** A test that ignores cases where there is limited nullness information. */
   public static class Lenient extends NullSpecTest {
     public Lenient(List<File> testFiles) {
@@ -71,18 +107,19 @@ abstract class NullSpecTest extends CheckerFrameworkPerDirectoryTest {
 
   private final boolean strict;
 
-  NullSpecTest(List<File> testFiles, boolean strict) {
-    super(testFiles, NullSpecChecker.class, "NullSpec", checkerOptions(strict));
+  NullSpecTest(List<File> testFiles, boolean strict, String... extraOptions) {
+    super(testFiles, NullSpecChecker.class, "NullSpec", checkerOptions(strict, extraOptions));
     this.strict = strict;
   }
 
-  private static String[] checkerOptions(boolean strict) {
+  private static String[] checkerOptions(boolean strict, String... extraOptions) {
     ImmutableList.Builder<String> options = ImmutableList.builder();
     options.add(
         "-AassumePure", "-Adetailedmsgtext", "-AcheckImpl", "-AsuppressWarnings=conditional");
     if (strict) {
       options.add("-Astrict");
     }
+    options.add(extraOptions);
     return options.build().toArray(new String[0]);
   }
 
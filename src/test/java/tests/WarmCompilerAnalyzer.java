@@ -0,0 +1,227 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package tests;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.CLASS_PATH;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import com.google.jspecify.nullness.NullSpecChecker;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Objects;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.jspecify.annotations.Nullable;
+import org.jspecify.conformance.AnalysisTiming;
+import org.jspecify.conformance.ConformanceTestRunner;
+import org.jspecify.conformance.ReportedFact;
+
+/**
+ * An analyzer that runs the checker on every group of test files with one compiler and one file
+ * manager, instead of setting up a new {@link
+ * org.checkerframework.framework.test.TypecheckExecutor} for each group.
+ *
+ * <p>What carries over from one group to the next is only what doesn't depend on the files being
+ * analyzed: the compiler tool, the file manager with its open JAR files and their indices, and the
+ * classes of the checker, which the test's own class loader loads once instead of each compilation
+ * loading them again from the classpath. Each group still gets a new compilation task, and with it
+ * a new javac context, a new {@link NullSpecChecker}, and new type factories, so no symbols, types,
+ * or dataflow results leak from one group into another.
+ *
+ * <p>The analyzer closes the file manager and deletes the class files that javac wrote when the JVM
+ * exits.
+ *
+ * <p>The file manager isn't thread-safe, so this analyzer analyzes one group at a time even if the
+ * runner calls it from several threads.
+ *
+ * <p>Because it owns the compilation task, this analyzer can also tell how much of each group's
+ * time javac spent in its own phases, and so how much the checker spent. See {@link
+ * JavacPhaseTimer}.
+ */
+final class WarmCompilerAnalyzer implements ConformanceTestRunner.Analyzer {
+  private final ImmutableList<String> options;
+  private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+  private final StandardJavaFileManager fileManager =
+      compiler.getStandardFileManager(null, null, UTF_8);
+  private final Path classOutput;
+
+  /** The test deps that the file manager's classpath includes, or null before the first group. */
+  private @Nullable ImmutableList<Path> classpathTestDeps;
+
+  WarmCompilerAnalyzer(ImmutableList<String> options) {
+    this.options =
+        ImmutableList.<String>builder().addAll(options).add("-Xmaxerrs", "9999").build();
+    try {
+      // Nothing reads the class files, but javac needs somewhere to write them.
+      classOutput = Files.createTempDirectory("conformance-test-classes");
+      fileManager.setLocationFromPaths(CLASS_OUTPUT, ImmutableList.of(classOutput));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // ConformanceTest shares one analyzer for the whole run, so it lives until the JVM exits.
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "warm-compiler-analyzer-close"));
+  }
+
+  /** Closes the file manager and its JAR files, and deletes the class files that javac wrote. */
+  private synchronized void close() {
+    try {
+      fileManager.close();
+    } catch (IOException e) {
+      // The JVM is exiting, and the file manager has only read the JAR files, so there's no harm.
+    }
+    try {
+      deleteRecursively(classOutput, ALLOW_INSECURE);
+    } catch (IOException e) {
+      // Leave it for the system to clean up along with its other temporary files.
+    }
+  }
+
+  @Override
+  public synchronized AnalysisTiming.TimedFacts analyze(
+      Path testDirectory, ImmutableSortedSet<Path> files, ImmutableList<Path> testDeps) {
+    setClasspath(testDeps);
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    JavaCompiler.CompilationTask task =
+        compiler.getTask(
+            new StringWriter(),
+            fileManager,
+            diagnostics,
+            options,
+            null,
+            fileManager.getJavaFileObjectsFromPaths(files));
+    JavacPhaseTimer javacPhases = new JavacPhaseTimer();
+    // Added before the checker adds its own listener, so javac calls this one first.
+    ((JavacTask) task).addTaskListener(javacPhases);
+    task.setProcessors(ImmutableList.of(new NullSpecChecker()));
+    long start = System.nanoTime();
+    task.call();
+    Duration wallTime = Duration.ofNanos(System.nanoTime() - start);
+    ImmutableSet<ReportedFact> facts =
+        ConformanceTest.reportedFacts(
+            diagnostics.getDiagnostics().stream()
+                .map(WarmCompilerAnalyzer::diagnosticMessage)
+                .filter(Objects::nonNull),
+            testDirectory);
+    return new AnalysisTiming.TimedFacts(
+        facts, new AnalysisTiming(wallTime, Duration.ofNanos(javacPhases.nanos), -1));
+  }
+
+  /**
+   * Adds up the time javac spends parsing, entering, attributing and flow-analyzing, and generating
+   * code. The checker runs when javac finishes analyzing each class, in a listener that javac calls
+   * after this one, so the checker's time isn't included.
+   */
+  private static final class JavacPhaseTimer implements TaskListener {
+    private static final ImmutableSet<TaskEvent.Kind> PHASES =
+        Sets.immutableEnumSet(
+            TaskEvent.Kind.PARSE,
+            TaskEvent.Kind.ENTER,
+            TaskEvent.Kind.ANALYZE,
+            TaskEvent.Kind.GENERATE);
+
+    /** How many phases have started and not finished, in case javac nests them. */
+    private int depth;
+
+    private long start;
+    long nanos;
+
+    @Override
+    public void started(TaskEvent e) {
+      if (PHASES.contains(e.getKind()) && depth++ == 0) {
+        start = System.nanoTime();
+      }
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+      if (PHASES.contains(e.getKind()) && --depth == 0) {
+        nanos += System.nanoTime() - start;
+      }
+    }
+  }
+
+  /**
+   * Sets the classpath to this JVM's classpath, which has the annotations that the tests use,
+   * followed by {@code testDeps}. The file manager keeps the JAR files it has opened as long as the
+   * classpath doesn't change, which it doesn't between groups of the same test run.
+   */
+  private void setClasspath(ImmutableList<Path> testDeps) {
+    if (testDeps.equals(classpathTestDeps)) {
+      return;
+    }
+    ImmutableList<Path> classpath =
+        ImmutableList.<Path>builder()
+            .addAll(
+                Splitter.on(File.pathSeparatorChar)
+                    .omitEmptyStrings()
+                    .splitToStream(System.getProperty("java.class.path"))
+                    .map(Paths::get)
+                    .collect(toImmutableList()))
+            .addAll(testDeps)
+            .build();
+    try {
+      fileManager.setLocationFromPaths(CLASS_PATH, classpath);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    classpathTestDeps = testDeps;
+  }
+
+  /**
+   * Returns the diagnostic in the {@code file:line: kind: message} form that {@link
+   * DetailMessage#parse} reads, or null if it isn't an error or warning in a source file.
+   */
+  private static @Nullable String diagnosticMessage(Diagnostic<? extends JavaFileObject> d) {
+    String kind;
+    switch (d.getKind()) {
+      case ERROR:
+        kind = "error";
+        break;
+      case WARNING:
+      case MANDATORY_WARNING:
+        kind = "warning";
+        break;
+      default:
+        return null;
+    }
+    if (d.getSource() == null) {
+      return null;
+    }
+    return String.format(
+        "%s:%d: %s: %s", d.getSource().getName(), d.getLineNumber(), kind, d.getMessage(null));
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2024 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+import java.util.function.Supplier;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/*
+ * With -AapiOnly, the checker reports errors in signatures but not in method bodies, initializer
+ * blocks, or field initializers, so only the signature errors here are expected.
+ */
+@NullMarked
+class ApiOnly {
+  interface Lib {
+    Object get();
+
+    void set(@Nullable Object o);
+  }
+
+  static class Box<T> {}
+
+  abstract static class Overrides implements Lib {
+    @Override
+    // jspecify_nullness_mismatch
+    public abstract @Nullable Object get();
+
+    @Override
+    // jspecify_nullness_mismatch
+    public abstract void set(Object o);
+  }
+
+  // jspecify_nullness_mismatch
+  Box<@Nullable Object> badTypeArgument;
+
+  // jspecify_nullness_intrinsically_not_nullable
+  void primitive(@Nullable int i) {}
+
+  Object fieldInitializer = null;
+
+  Supplier<Object> lambdaInFieldInitializer = () -> null;
+
+  enum Constants {
+    A {
+      @Override
+      Object body() {
+        return null;
+      }
+    };
+
+    Object body() {
+      return this;
+    }
+  }
+
+  {
+    Object o = null;
+    o.toString();
+  }
+
+  Object methodBody(@Nullable Object o) {
+    Object local = o;
+    return local;
+  }
+}
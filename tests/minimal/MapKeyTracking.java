@@ -0,0 +1,80 @@
+// Copyright 2023 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+import java.util.Map;
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+class MapKeyTracking {
+  String afterContainsKey(Map<String, String> map, String key) {
+    if (map.containsKey(key)) {
+      return map.get(key).toString();
+    }
+    return "";
+  }
+
+  String afterPut(Map<String, String> map, String key) {
+    map.put(key, "value");
+    return map.get(key).toString();
+  }
+
+  String withoutContainsKey(Map<String, String> map, String key) {
+    // jspecify_nullness_mismatch
+    return map.get(key).toString();
+  }
+
+  String afterRemove(Map<String, String> map, String key) {
+    if (map.containsKey(key)) {
+      map.remove(key);
+      // jspecify_nullness_mismatch
+      return map.get(key).toString();
+    }
+    return "";
+  }
+
+  String afterClear(Map<String, String> map, String key) {
+    if (map.containsKey(key)) {
+      map.clear();
+      // jspecify_nullness_mismatch
+      return map.get(key).toString();
+    }
+    return "";
+  }
+
+  String afterKeyReassignment(Map<String, String> map, String key) {
+    if (map.containsKey(key)) {
+      key = "other";
+      // jspecify_nullness_mismatch
+      return map.get(key).toString();
+    }
+    return "";
+  }
+
+  String afterMapReassignment(Map<String, String> map, Map<String, String> other, String key) {
+    if (map.containsKey(key)) {
+      map = other;
+      // jspecify_nullness_mismatch
+      return map.get(key).toString();
+    }
+    return "";
+  }
+
+  String afterConditionalPut(Map<String, String> map, String key, boolean b) {
+    if (b) {
+      map.put(key, "value");
+    }
+    // jspecify_nullness_mismatch
+    return map.get(key).toString();
+  }
+}
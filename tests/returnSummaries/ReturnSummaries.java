@@ -0,0 +1,76 @@
+// Copyright 2023 The JSpecify Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+@NullMarked
+class ReturnSummaries {
+  Object alwaysNonNull() {
+    return create().toString();
+  }
+
+  Object nonNullIfArgumentNonNull(Object o) {
+    return identity(o).toString();
+  }
+
+  Object nullableArgument(@Nullable Object o) {
+    // jspecify_nullness_mismatch
+    return identity(o).toString();
+  }
+
+  Object transitive() {
+    return viaOtherHelper().toString();
+  }
+
+  Object mayReturnNull() {
+    // jspecify_nullness_mismatch
+    return sometimesNull(true).toString();
+  }
+
+  Object reassignedParameter(Object o) {
+    // jspecify_nullness_mismatch
+    return reassigns(o).toString();
+  }
+
+  Object overridable() {
+    // jspecify_nullness_mismatch
+    return notSummarized().toString();
+  }
+
+  private static @Nullable Object create() {
+    return new Object();
+  }
+
+  private @Nullable Object identity(@Nullable Object o) {
+    return o;
+  }
+
+  private @Nullable Object viaOtherHelper() {
+    return true ? create() : "" + this;
+  }
+
+  private @Nullable Object sometimesNull(boolean b) {
+    return b ? new Object() : null;
+  }
+
+  private @Nullable Object reassigns(@Nullable Object o) {
+    o = null;
+    return o;
+  }
+
+  @Nullable Object notSummarized() {
+    return new Object();
+  }
+}